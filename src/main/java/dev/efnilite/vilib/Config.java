@@ -1,39 +1,66 @@
 package dev.efnilite.vilib;
 
-import com.tchristofferson.configupdater.ConfigUpdater;
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Config management class.
+ * Every file is registered in the {@link ConfigRegistry} of vilib, which does the loading, reloading and watching.
  */
 public enum Config {
 
     CONFIG("config.yml", null);
 
     /**
-     * Reloads all config files.
+     * Reloads all config files off the main thread.
+     * Until a file has been parsed completely, the previous values stay in use.
+     * Files that contain errors keep their previous values.
+     *
+     * @return a future that completes when all new values are in use.
      */
-    public static void reload() {
-        for (Config config : values()) {
-            config.load();
-        }
+    public static CompletableFuture<Void> reload() {
+        return getRegistry().reload().whenComplete((result, ex) -> {
+            if (ex == null) {
+                ViMain.logging().info("Loaded all config files");
+            }
+        });
+    }
 
-        ViMain.logging().info("Loaded all config files");
+    /**
+     * Starts reloading config files as soon as they are changed on disk. Only the files that changed are reloaded.
+     * Use {@link #onChange(Consumer)} to be notified of the changed keys.
+     */
+    public static void watch() {
+        getRegistry().watch();
+    }
+
+    /**
+     * Stops reloading config files when they are changed on disk.
+     */
+    public static void unwatch() {
+        getRegistry().unwatch();
+    }
+
+    /**
+     * @return the registry in which every file of this enum is registered.
+     */
+    @NotNull
+    public static ConfigRegistry getRegistry() {
+        return ViMain.getPlugin().getConfigRegistry();
     }
 
     /**
      * The {@link FileConfiguration} instance associated with this config file.
      */
-    public FileConfiguration fileConfiguration;
+    public volatile FileConfiguration fileConfiguration;
 
     /**
      * The path to this file, incl. plugin folder.
@@ -50,36 +77,71 @@ public enum Config {
      */
     public final List<String> ignoredSections;
 
+    private final ConfigFile file;
+
     Config(String fileName, @Nullable List<String> ignoredSections) {
         this.fileName = fileName;
         this.ignoredSections = ignoredSections;
-        this.path = ViMain.getInFolder(fileName);
+        this.file = getRegistry().register(fileName, ignoredSections, configuration -> this.fileConfiguration = configuration);
+        this.path = file.path;
 
-        if (!path.exists()) {
-            ViMain.getPlugin().saveResource(fileName, false);
-            ViMain.logging().info("Created config file %s".formatted(fileName));
-        }
-
-        update();
-        load();
+        file.setup();
     }
 
     /**
      * Loads the file from disk.
      */
     public void load() {
-        this.fileConfiguration = YamlConfiguration.loadConfiguration(path);
+        file.load();
+    }
+
+    /**
+     * Loads the file from disk off the main thread. The file is parsed and flattened completely before the new values are used.
+     *
+     * @return a future that completes with the changed paths when the new values are in use,
+     * or completes exceptionally when the file contains errors, in which case the previous values are kept.
+     */
+    public CompletableFuture<Set<String>> loadAsync() {
+        return file.loadAsync();
     }
 
     /**
      * Updates the file so all keys are present.
      */
     public void update() {
-        try {
-            ConfigUpdater.update(ViMain.getPlugin(), fileName, path, ignoredSections);
-        } catch (Exception ex) {
-            ViMain.logging().stack("Error while trying to update config file", ex);
-        }
+        file.update();
+    }
+
+    /**
+     * Adds a listener which is called with the changed paths every time the values of this file change,
+     * e.g. after {@link #reload()} or when the file is changed while {@link #watch() watching}.
+     * Listeners may be called off the main thread.
+     *
+     * @param listener The listener.
+     */
+    public void onChange(@NotNull Consumer<Set<String>> listener) {
+        file.onChange(listener);
+    }
+
+    /**
+     * @see ConfigFile#subscribe(Runnable, String...)
+     */
+    public Consumer<Set<String>> subscribe(@NotNull Runnable listener, @NotNull String... keys) {
+        return file.subscribe(listener, keys);
+    }
+
+    /**
+     * @see ConfigFile#derive(Function, String...)
+     */
+    public <T> ConfigValue<T> derive(@NotNull Function<ConfigSnapshot, T> compute, @NotNull String... keys) {
+        return file.derive(compute, keys);
+    }
+
+    /**
+     * @param listener The listener to remove.
+     */
+    public void removeListener(@NotNull Consumer<Set<String>> listener) {
+        file.removeListener(listener);
     }
 
     /**
@@ -87,7 +149,7 @@ public enum Config {
      * @return True when path exists, false if not.
      */
     public boolean isPath(@NotNull String path) {
-        return fileConfiguration.isSet(path);
+        return file.isPath(path);
     }
 
     /**
@@ -95,9 +157,7 @@ public enum Config {
      * @return The value at path.
      */
     public Object get(@NotNull String path) {
-        check(path);
-
-        return fileConfiguration.get(path);
+        return file.get(path);
     }
 
 
@@ -106,9 +166,7 @@ public enum Config {
      * @return The boolean value at path.
      */
     public boolean getBoolean(@NotNull String path) {
-        check(path);
-
-        return fileConfiguration.getBoolean(path);
+        return file.getBoolean(path);
     }
 
     /**
@@ -116,9 +174,7 @@ public enum Config {
      * @return The int value at path.
      */
     public int getInt(@NotNull String path) {
-        check(path);
-
-        return fileConfiguration.getInt(path);
+        return file.getInt(path);
     }
 
     /**
@@ -126,9 +182,7 @@ public enum Config {
      * @return The double value at path.
      */
     public double getDouble(@NotNull String path) {
-        check(path);
-
-        return fileConfiguration.getDouble(path);
+        return file.getDouble(path);
     }
 
     /**
@@ -137,9 +191,7 @@ public enum Config {
      */
     @NotNull
     public String getString(@NotNull String path) {
-        check(path);
-
-        return fileConfiguration.getString(path, "");
+        return file.getString(path);
     }
 
     /**
@@ -148,9 +200,7 @@ public enum Config {
      */
     @NotNull
     public List<String> getStringList(@NotNull String path) {
-        check(path);
-
-        return fileConfiguration.getStringList(path);
+        return file.getStringList(path);
     }
 
     /**
@@ -159,9 +209,7 @@ public enum Config {
      */
     @NotNull
     public List<Integer> getIntList(@NotNull String path) {
-        check(path);
-
-        return fileConfiguration.getIntegerList(path);
+        return file.getIntList(path);
     }
 
     /**
@@ -171,21 +219,22 @@ public enum Config {
      */
     @NotNull
     public List<String> getChildren(@NotNull String path, boolean... deep) {
-        check(path);
-
-        ConfigurationSection section = fileConfiguration.getConfigurationSection(path);
-
-        if (section == null) {
-            return new ArrayList<>();
-        }
+        return file.getChildren(path);
+    }
 
-        return new ArrayList<>(section.getKeys(deep != null));
+    /**
+     * @return The values of this file as of the last load.
+     */
+    @NotNull
+    public ConfigSnapshot getSnapshot() {
+        return file.getSnapshot();
     }
 
-    // checks if the specified path exists to avoid developer error
-    private void check(@NotNull String path) {
-        if (!isPath(path)) {
-            throw new NoSuchElementException("Unknown path %s in %s".formatted(path, fileName));
-        }
+    /**
+     * @return The file this constant delegates to.
+     */
+    @NotNull
+    public ConfigFile getFile() {
+        return file;
     }
 }
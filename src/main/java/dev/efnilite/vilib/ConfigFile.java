@@ -0,0 +1,363 @@
+package dev.efnilite.vilib;
+
+import com.tchristofferson.configupdater.ConfigUpdater;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A single YAML file in a plugin's folder.
+ * Values are read from a {@link ConfigSnapshot}, which is replaced in one write on every load.
+ * Files are usually created using a {@link ConfigRegistry} or {@link Config}.
+ */
+public final class ConfigFile {
+
+    /**
+     * The plugin this file belongs to.
+     */
+    public final Plugin plugin;
+
+    /**
+     * The path to this file, incl. plugin folder.
+     */
+    public final File path;
+
+    /**
+     * The name of this file, e.g. config.yml
+     */
+    public final String fileName;
+
+    /**
+     * The sections in the file that will be ignored when updating the keys.
+     */
+    public final List<String> ignoredSections;
+
+    private volatile FileConfiguration fileConfiguration;
+
+    /**
+     * The values of {@link #fileConfiguration}, flattened when the file is loaded.
+     * Replaced in one write on every load, so readers see either the old or the new values.
+     */
+    private volatile ConfigSnapshot snapshot = ConfigSnapshot.EMPTY;
+
+    /**
+     * Incremented on every load, so a slow async load can't replace the values of a load that was started later.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * Called with the changed paths after the values of this file have been replaced.
+     */
+    private final List<Consumer<Set<String>>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Called with the new configuration while the values are replaced, to keep {@link Config#fileConfiguration} in sync.
+     */
+    private final Consumer<FileConfiguration> onReplace;
+
+    /**
+     * Creates a file. The file is not loaded until {@link #setup()} or {@link #load()} is called.
+     *
+     * @param plugin          The plugin which contains the default file.
+     * @param fileName        The name of the file, e.g. config.yml
+     * @param ignoredSections The sections in the file that will be ignored when updating the keys.
+     */
+    public ConfigFile(@NotNull Plugin plugin, @NotNull String fileName, @Nullable List<String> ignoredSections) {
+        this(plugin, fileName, ignoredSections, configuration -> {});
+    }
+
+    ConfigFile(Plugin plugin, String fileName, List<String> ignoredSections, Consumer<FileConfiguration> onReplace) {
+        this.plugin = plugin;
+        this.fileName = fileName;
+        this.ignoredSections = ignoredSections;
+        this.path = new File(plugin.getDataFolder(), fileName);
+        this.onReplace = onReplace;
+    }
+
+    /**
+     * Creates the file from the plugin's resources if it doesn't exist, adds missing keys and loads it.
+     */
+    public void setup() {
+        if (!path.exists()) {
+            plugin.saveResource(fileName, false);
+            ViMain.logging().info("Created config file %s", fileName);
+        }
+
+        update();
+        load();
+    }
+
+    /**
+     * Loads the file from disk.
+     */
+    public void load() {
+        FileConfiguration configuration = YamlConfiguration.loadConfiguration(path);
+        ConfigSnapshot loaded = ConfigSnapshot.of(configuration);
+
+        ConfigSnapshot previous;
+        synchronized (generation) {
+            generation.incrementAndGet();
+            previous = replace(configuration, loaded);
+        }
+
+        notify(loaded.diff(previous));
+    }
+
+    /**
+     * Loads the file from disk off the main thread. The file is parsed and flattened completely before the new values are used.
+     *
+     * @return a future that completes with the changed paths when the new values are in use,
+     * or completes exceptionally when the file contains errors, in which case the previous values are kept.
+     */
+    public CompletableFuture<Set<String>> loadAsync() {
+        int current = generation.incrementAndGet();
+
+        return CompletableFuture.supplyAsync(() -> {
+            YamlConfiguration configuration = new YamlConfiguration();
+
+            try {
+                configuration.load(path);
+            } catch (IOException | InvalidConfigurationException ex) {
+                throw new CompletionException("Invalid config file %s".formatted(fileName), ex);
+            }
+
+            return configuration;
+        }).thenApply(configuration -> {
+            ConfigSnapshot loaded = ConfigSnapshot.of(configuration);
+
+            ConfigSnapshot previous;
+            synchronized (generation) {
+                if (generation.get() != current) {
+                    return Set.of();
+                }
+
+                previous = replace(configuration, loaded);
+            }
+
+            Set<String> changed = loaded.diff(previous);
+            notify(changed);
+            return changed;
+        });
+    }
+
+    // replaces the current values and returns the previous snapshot
+    private ConfigSnapshot replace(FileConfiguration configuration, ConfigSnapshot loaded) {
+        ConfigSnapshot previous = snapshot;
+
+        fileConfiguration = configuration;
+        onReplace.accept(configuration);
+        snapshot = loaded;
+
+        return previous;
+    }
+
+    // reloads after a change on disk, logging errors since nobody waits for the result
+    void reloadChanged() {
+        loadAsync().whenComplete((changed, ex) -> {
+            if (ex != null) {
+                ViMain.logging().stack("Error while trying to reload config file %s".formatted(fileName), ex);
+            } else if (!changed.isEmpty()) {
+                ViMain.logging().info("Reloaded %d changed keys in %s", changed.size(), fileName);
+            }
+        });
+    }
+
+    /**
+     * Updates the file so all keys are present.
+     */
+    public void update() {
+        try {
+            ConfigUpdater.update(plugin, fileName, path, ignoredSections);
+        } catch (Exception ex) {
+            ViMain.logging().stack("Error while trying to update config file", ex);
+        }
+    }
+
+    /**
+     * Adds a listener which is called with the changed paths every time the values of this file change,
+     * e.g. after a reload or when the file is changed while watching.
+     * Listeners may be called off the main thread.
+     *
+     * @param listener The listener.
+     */
+    public void onChange(@NotNull Consumer<Set<String>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Adds a listener which is only called when one of the keys, or a key inside one of their sections, changes.
+     * Listeners may be called off the main thread.
+     *
+     * @param listener The listener.
+     * @param keys     The keys.
+     * @return the registered listener, which can be removed using {@link #removeListener(Consumer)}.
+     */
+    public Consumer<Set<String>> subscribe(@NotNull Runnable listener, @NotNull String... keys) {
+        String[] copy = keys.clone();
+        Consumer<Set<String>> filtered = changed -> {
+            if (ConfigValue.matches(copy, changed)) {
+                listener.run();
+            }
+        };
+
+        onChange(filtered);
+        return filtered;
+    }
+
+    /**
+     * Creates a value derived from keys in this file. The value is computed once when it's first requested,
+     * and only computed again after one of the keys has changed. Derived values live as long as this file,
+     * so they should be created once and stored.
+     *
+     * @param compute Computes the value from the current values of this file.
+     * @param keys    The keys the value depends on.
+     * @param <T>     The type of the value.
+     * @return the derived value.
+     */
+    public <T> ConfigValue<T> derive(@NotNull Function<ConfigSnapshot, T> compute, @NotNull String... keys) {
+        ConfigValue<T> value = new ConfigValue<>(this::getSnapshot, compute, keys);
+
+        onChange(value::invalidate);
+        return value;
+    }
+
+    /**
+     * @param listener The listener to remove.
+     */
+    public void removeListener(@NotNull Consumer<Set<String>> listener) {
+        listeners.remove(listener);
+    }
+
+    private void notify(Set<String> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        for (Consumer<Set<String>> listener : listeners) {
+            try {
+                listener.accept(changed);
+            } catch (Exception ex) {
+                ViMain.logging().stack("Error while handling changes to config file %s".formatted(fileName), ex);
+            }
+        }
+    }
+
+    /**
+     * @param path The path.
+     * @return True when path exists, false if not.
+     */
+    public boolean isPath(@NotNull String path) {
+        return snapshot.isSet(path);
+    }
+
+    /**
+     * @param path The path.
+     * @return The value at path.
+     */
+    public Object get(@NotNull String path) {
+        return check(path).get(path);
+    }
+
+    /**
+     * @param path The path.
+     * @return The boolean value at path.
+     */
+    public boolean getBoolean(@NotNull String path) {
+        return check(path).getBoolean(path);
+    }
+
+    /**
+     * @param path The path.
+     * @return The int value at path.
+     */
+    public int getInt(@NotNull String path) {
+        return check(path).getInt(path);
+    }
+
+    /**
+     * @param path The path.
+     * @return The double value at path.
+     */
+    public double getDouble(@NotNull String path) {
+        return check(path).getDouble(path);
+    }
+
+    /**
+     * @param path The path.
+     * @return The String value at path.
+     */
+    @NotNull
+    public String getString(@NotNull String path) {
+        return check(path).getString(path, "");
+    }
+
+    /**
+     * @param path The path.
+     * @return The String list value at path.
+     */
+    @NotNull
+    public List<String> getStringList(@NotNull String path) {
+        return new ArrayList<>(check(path).getStringList(path));
+    }
+
+    /**
+     * @param path The path.
+     * @return The int list value at path.
+     */
+    @NotNull
+    public List<Integer> getIntList(@NotNull String path) {
+        return new ArrayList<>(check(path).getIntList(path));
+    }
+
+    /**
+     * @param path The path.
+     * @return All nested children nodes from path.
+     */
+    @NotNull
+    public List<String> getChildren(@NotNull String path) {
+        return new ArrayList<>(check(path).getChildren(path));
+    }
+
+    /**
+     * @return The {@link FileConfiguration} as of the last load.
+     */
+    public FileConfiguration getFileConfiguration() {
+        return fileConfiguration;
+    }
+
+    /**
+     * @return The values of this file as of the last load.
+     */
+    @NotNull
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // checks if the specified path exists to avoid developer error
+    // returns the snapshot that was checked, so a reload between the check and the read can't be observed
+    private ConfigSnapshot check(@NotNull String path) {
+        ConfigSnapshot snapshot = this.snapshot;
+
+        if (!snapshot.isSet(path)) {
+            throw new NoSuchElementException("Unknown path %s in %s".formatted(path, fileName));
+        }
+
+        return snapshot;
+    }
+}
@@ -0,0 +1,171 @@
+package dev.efnilite.vilib;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * The config files of a plugin. Files are registered by name and loaded in parallel.
+ * Example:
+ * <blockquote><code>getConfigRegistry().register("config.yml").register("lang.yml").load();</code></blockquote>
+ * <blockquote><code>getConfigRegistry().get("lang.yml").getString("prefix");</code></blockquote>
+ *
+ * @see ViPlugin#getConfigRegistry()
+ */
+public final class ConfigRegistry {
+
+    private final Plugin plugin;
+    private final Map<String, ConfigFile> files = Collections.synchronizedMap(new LinkedHashMap<>());
+    private ConfigWatcher watcher;
+
+    /**
+     * @param plugin The plugin which contains the default files.
+     */
+    public ConfigRegistry(@NotNull Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Registers a file. The file is not loaded until {@link #load()} is called.
+     *
+     * @param fileName The name of the file, e.g. config.yml
+     * @return this instance.
+     */
+    public ConfigRegistry register(@NotNull String fileName) {
+        return register(fileName, null);
+    }
+
+    /**
+     * Registers a file. The file is not loaded until {@link #load()} is called.
+     *
+     * @param fileName        The name of the file, e.g. config.yml
+     * @param ignoredSections The sections in the file that will be ignored when updating the keys.
+     * @return this instance.
+     */
+    public ConfigRegistry register(@NotNull String fileName, @Nullable List<String> ignoredSections) {
+        add(new ConfigFile(plugin, fileName, ignoredSections));
+
+        return this;
+    }
+
+    // registers a file which notifies its owner when its configuration is replaced, used by Config
+    ConfigFile register(String fileName, @Nullable List<String> ignoredSections, Consumer<FileConfiguration> onReplace) {
+        return add(new ConfigFile(plugin, fileName, ignoredSections, onReplace));
+    }
+
+    private ConfigFile add(ConfigFile file) {
+        if (files.putIfAbsent(file.fileName, file) != null) {
+            throw new IllegalArgumentException("Config file %s is already registered".formatted(file.fileName));
+        }
+
+        return file;
+    }
+
+    /**
+     * Creates, updates and loads every registered file that hasn't been loaded yet in parallel,
+     * and waits until all files have been loaded.
+     */
+    public void load() {
+        CompletableFuture<?>[] futures = getFiles().stream()
+                .filter(file -> file.getFileConfiguration() == null)
+                .map(file -> CompletableFuture.runAsync(file::setup))
+                .toArray(CompletableFuture[]::new);
+
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException ex) {
+            ViMain.logging().stack("Error while trying to load config files of %s".formatted(plugin.getName()), ex);
+        }
+    }
+
+    /**
+     * Reloads every registered file off the main thread.
+     * Until a file has been parsed completely, the previous values stay in use.
+     * Files that contain errors keep their previous values.
+     *
+     * @return a future that completes when all new values are in use.
+     */
+    public CompletableFuture<Void> reload() {
+        CompletableFuture<?>[] futures = getFiles().stream()
+                .map(ConfigFile::loadAsync)
+                .toArray(CompletableFuture[]::new);
+
+        return CompletableFuture.allOf(futures).whenComplete((result, ex) -> {
+            if (ex != null) {
+                ViMain.logging().stack("Error while trying to reload config files of %s".formatted(plugin.getName()), ex);
+            }
+        });
+    }
+
+    /**
+     * Starts reloading files as soon as they are changed on disk. Only the files that changed are reloaded.
+     * Files registered after this call are not watched.
+     */
+    public synchronized void watch() {
+        if (watcher != null) {
+            return;
+        }
+
+        try {
+            watcher = new ConfigWatcher();
+            for (ConfigFile file : getFiles()) {
+                watcher.register(file.path, file::reloadChanged);
+            }
+            watcher.start();
+        } catch (IOException ex) {
+            ViMain.logging().stack("Error while trying to watch config files of %s".formatted(plugin.getName()), ex);
+            unwatch();
+        }
+    }
+
+    /**
+     * Stops reloading files when they are changed on disk.
+     */
+    public synchronized void unwatch() {
+        if (watcher == null) {
+            return;
+        }
+
+        watcher.close();
+        watcher = null;
+    }
+
+    /**
+     * @param fileName The name of the file, e.g. config.yml
+     * @return the file.
+     * @throws NoSuchElementException if the file isn't registered.
+     */
+    @NotNull
+    public ConfigFile get(@NotNull String fileName) {
+        ConfigFile file = files.get(fileName);
+
+        if (file == null) {
+            throw new NoSuchElementException("Unknown config file %s".formatted(fileName));
+        }
+
+        return file;
+    }
+
+    /**
+     * @return a copy of all registered files, in the order they were registered.
+     */
+    @NotNull
+    public Collection<ConfigFile> getFiles() {
+        synchronized (files) {
+            return new ArrayList<>(files.values());
+        }
+    }
+}
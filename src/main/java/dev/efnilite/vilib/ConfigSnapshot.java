@@ -0,0 +1,273 @@
+package dev.efnilite.vilib;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable copy of all values in a config file, flattened by path.
+ * Every lookup is a single map access, instead of walking the sections of the file for every call.
+ * Lists are converted once when the snapshot is created.
+ * Conversions follow the same rules as {@link ConfigurationSection}.
+ * Sections, lists and maps are copied when the snapshot is created, so changes to the file don't affect the snapshot,
+ * and {@link #get(String)} returns a new copy of them every call.
+ */
+public final class ConfigSnapshot {
+
+    /**
+     * An empty snapshot.
+     */
+    public static final ConfigSnapshot EMPTY = new ConfigSnapshot(Map.of(), Map.of(), Map.of(), Map.of());
+
+    private final Map<String, Object> values;
+    private final Map<String, List<String>> stringLists;
+    private final Map<String, List<Integer>> intLists;
+    private final Map<String, List<String>> children;
+
+    private ConfigSnapshot(Map<String, Object> values, Map<String, List<String>> stringLists,
+                           Map<String, List<Integer>> intLists, Map<String, List<String>> children) {
+        this.values = values;
+        this.stringLists = stringLists;
+        this.intLists = intLists;
+        this.children = children;
+    }
+
+    /**
+     * Creates a snapshot of all values in a section.
+     *
+     * @param section The section, usually a loaded file.
+     * @return the snapshot.
+     */
+    public static ConfigSnapshot of(@NotNull ConfigurationSection section) {
+        Map<String, Object> values = new HashMap<>();
+        Map<String, List<String>> stringLists = new HashMap<>();
+        Map<String, List<Integer>> intLists = new HashMap<>();
+        Map<String, List<String>> children = new HashMap<>();
+
+        for (Map.Entry<String, Object> entry : section.getValues(true).entrySet()) {
+            String path = entry.getKey();
+            Object value = entry.getValue();
+
+            values.put(path, copy(value));
+
+            if (value instanceof ConfigurationSection child) {
+                children.put(path, List.copyOf(child.getKeys(true)));
+            } else if (value instanceof List<?> list) {
+                stringLists.put(path, toStringList(list));
+                intLists.put(path, toIntList(list));
+            }
+        }
+
+        return new ConfigSnapshot(values, stringLists, intLists, children);
+    }
+
+    // copies sections as their flattened values and lists and maps as unmodifiable copies, other values are immutable
+    private static Object copy(Object value) {
+        if (value instanceof ConfigurationSection section) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            section.getValues(true).forEach((path, child) -> {
+                if (!(child instanceof ConfigurationSection)) {
+                    values.put(path, copy(child));
+                }
+            });
+            return new Section(Collections.unmodifiableMap(values));
+        } else if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object object : list) {
+                copy.add(copy(object));
+            }
+            return Collections.unmodifiableList(copy);
+        } else if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            map.forEach((key, object) -> copy.put(key, copy(object)));
+            return Collections.unmodifiableMap(copy);
+        }
+        return value;
+    }
+
+    // copies a stored value into a new mutable value, so callers can't change the snapshot
+    private static Object thaw(Object value) {
+        if (value instanceof Section section) {
+            MemoryConfiguration configuration = new MemoryConfiguration();
+            section.values.forEach((path, child) -> configuration.set(path, thaw(child)));
+            return configuration;
+        } else if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object object : list) {
+                copy.add(thaw(object));
+            }
+            return copy;
+        } else if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            map.forEach((key, object) -> copy.put(key, thaw(object)));
+            return copy;
+        }
+        return value;
+    }
+
+    private static List<String> toStringList(List<?> list) {
+        List<String> strings = new ArrayList<>(list.size());
+        for (Object object : list) {
+            if (object instanceof String || object instanceof Number || object instanceof Boolean || object instanceof Character) {
+                strings.add(String.valueOf(object));
+            }
+        }
+        return Collections.unmodifiableList(strings);
+    }
+
+    private static List<Integer> toIntList(List<?> list) {
+        List<Integer> ints = new ArrayList<>(list.size());
+        for (Object object : list) {
+            if (object instanceof Number number) {
+                ints.add(number.intValue());
+            } else if (object instanceof String string) {
+                try {
+                    ints.add(Integer.valueOf(string));
+                } catch (NumberFormatException ignored) {
+                    // same as ConfigurationSection, invalid values are skipped
+                }
+            } else if (object instanceof Character character) {
+                ints.add((int) character);
+            }
+        }
+        return Collections.unmodifiableList(ints);
+    }
+
+    /**
+     * @param path The path.
+     * @return True when path exists, false if not.
+     */
+    public boolean isSet(@NotNull String path) {
+        return values.containsKey(path);
+    }
+
+    /**
+     * Sections are returned as a new {@link MemoryConfiguration}, lists and maps as new copies.
+     *
+     * @param path The path.
+     * @return The value at path, or null if it doesn't exist.
+     */
+    @Nullable
+    public Object get(@NotNull String path) {
+        return thaw(values.get(path));
+    }
+
+    /**
+     * @param path The path.
+     * @return The boolean value at path, or false if it isn't a boolean.
+     */
+    public boolean getBoolean(@NotNull String path) {
+        return values.get(path) instanceof Boolean bool && bool;
+    }
+
+    /**
+     * @param path The path.
+     * @return The int value at path, or 0 if it isn't a number.
+     */
+    public int getInt(@NotNull String path) {
+        return values.get(path) instanceof Number number ? number.intValue() : 0;
+    }
+
+    /**
+     * @param path The path.
+     * @return The double value at path, or 0 if it isn't a number.
+     */
+    public double getDouble(@NotNull String path) {
+        return values.get(path) instanceof Number number ? number.doubleValue() : 0;
+    }
+
+    /**
+     * @param path The path.
+     * @param def  The value returned when path doesn't exist.
+     * @return The String value at path.
+     */
+    public String getString(@NotNull String path, String def) {
+        Object value = values.get(path);
+
+        return value != null ? value.toString() : def;
+    }
+
+    /**
+     * @param path The path.
+     * @return An unmodifiable String list at path, which is empty if it isn't a list.
+     */
+    @NotNull
+    public List<String> getStringList(@NotNull String path) {
+        return stringLists.getOrDefault(path, List.of());
+    }
+
+    /**
+     * @param path The path.
+     * @return An unmodifiable int list at path, which is empty if it isn't a list.
+     */
+    @NotNull
+    public List<Integer> getIntList(@NotNull String path) {
+        return intLists.getOrDefault(path, List.of());
+    }
+
+    /**
+     * @param path The path.
+     * @return All nested keys of the section at path, relative to path, or an empty list if it isn't a section.
+     */
+    @NotNull
+    public List<String> getChildren(@NotNull String path) {
+        return children.getOrDefault(path, List.of());
+    }
+
+    /**
+     * Compares the values in this snapshot to those in another. Sections themselves are not compared, only their values.
+     *
+     * @param other The other snapshot, usually the previous values.
+     * @return the paths whose value is different, added or removed.
+     */
+    @NotNull
+    public Set<String> diff(@NotNull ConfigSnapshot other) {
+        Set<String> changed = new HashSet<>();
+
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (!children.containsKey(entry.getKey()) && !Objects.equals(entry.getValue(), other.values.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String path : other.values.keySet()) {
+            if (!other.children.containsKey(path) && (!values.containsKey(path) || children.containsKey(path))) {
+                changed.add(path);
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return All paths in this snapshot.
+     */
+    @NotNull
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    // the flattened values of a section, which are only compared by identity like sections
+    private record Section(Map<String, Object> values) {
+
+        @Override
+        public boolean equals(Object other) {
+            return this == other;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package dev.efnilite.vilib;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A value derived from config keys, e.g. a compiled pattern or particle data.
+ * The value is computed the first time it's requested, and kept until one of its keys changes.
+ * Example:
+ * <blockquote><code>ConfigValue&lt;Pattern&gt; pattern = Config.CONFIG.derive(values -> Pattern.compile(values.getString("filter", "")), "filter");</code></blockquote>
+ *
+ * @param <T> The type of the value.
+ */
+public final class ConfigValue<T> implements Supplier<T> {
+
+    private final Supplier<ConfigSnapshot> source;
+    private final Function<ConfigSnapshot, T> compute;
+    private final String[] keys;
+
+    private T value;
+    private boolean computed;
+
+    ConfigValue(Supplier<ConfigSnapshot> source, Function<ConfigSnapshot, T> compute, String[] keys) {
+        this.source = source;
+        this.compute = compute;
+        this.keys = keys.clone();
+    }
+
+    /**
+     * @return the value, which is computed from the current values if a key has changed since the last call.
+     */
+    @Override
+    public synchronized T get() {
+        if (!computed) {
+            value = compute.apply(source.get());
+            computed = true;
+        }
+
+        return value;
+    }
+
+    /**
+     * @return true if the value is cached, false if it will be computed on the next call to {@link #get()}.
+     */
+    public synchronized boolean isComputed() {
+        return computed;
+    }
+
+    // drops the cached value if one of the changed paths is one of the keys
+    synchronized void invalidate(Set<String> changed) {
+        if (matches(keys, changed)) {
+            value = null;
+            computed = false;
+        }
+    }
+
+    /**
+     * A key matches a changed path if it's the same path, if the path is inside the key's section,
+     * or if the key is inside the path's section.
+     *
+     * @param keys    The keys.
+     * @param changed The changed paths.
+     * @return true if any of the changed paths matches any of the keys.
+     */
+    static boolean matches(@NotNull String[] keys, @NotNull Set<String> changed) {
+        for (String key : keys) {
+            if (changed.contains(key)) {
+                return true;
+            }
+
+            for (String path : changed) {
+                if (path.startsWith(key) && path.length() > key.length() && path.charAt(key.length()) == '.'
+                        || key.startsWith(path) && key.length() > path.length() && key.charAt(path.length()) == '.') {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,143 @@
+package dev.efnilite.vilib;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches config files for changes on disk, and reloads only the files that changed.
+ * Editors often write a file several times in a row, so a file is only reloaded once no events have been received for it
+ * for {@link #DEBOUNCE_MS}.
+ */
+public final class ConfigWatcher implements AutoCloseable {
+
+    /**
+     * The time in ms after the last change to a file before it's reloaded.
+     */
+    public static final long DEBOUNCE_MS = 500;
+
+    private final WatchService service;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Map<Path, Runnable> files = new ConcurrentHashMap<>();
+    private final Thread thread;
+
+    /**
+     * Creates a new watcher. Files are only watched after {@link #start()}.
+     *
+     * @throws IOException if the file system doesn't support watching.
+     */
+    public ConfigWatcher() throws IOException {
+        this.service = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::work, "vilib-config-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Registers a file. When the file changes, reload is called on the watcher thread.
+     *
+     * @param file   The file.
+     * @param reload What to do when the file changes, which should be quick or async.
+     * @throws IOException if the folder of the file can't be watched.
+     */
+    public void register(@NotNull File file, @NotNull Runnable reload) throws IOException {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        Path directory = path.getParent();
+
+        if (!directories.containsValue(directory)) {
+            directories.put(directory.register(service, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE), directory);
+        }
+
+        files.put(path, reload);
+    }
+
+    /**
+     * Starts watching.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops watching. Pending changes are discarded.
+     */
+    @Override
+    public void close() {
+        try {
+            service.close();
+        } catch (IOException ex) {
+            ViMain.logging().stack("Error while trying to stop watching config files", ex);
+        }
+    }
+
+    private void work() {
+        Map<Path, Long> pending = new HashMap<>();
+
+        try {
+            while (true) {
+                WatchKey key;
+
+                if (pending.isEmpty()) {
+                    key = service.take();
+                } else {
+                    long wait = pending.values().stream().mapToLong(Long::longValue).min().orElse(0) - System.currentTimeMillis();
+                    key = wait > 0 ? service.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+
+                if (key != null) {
+                    collect(key, pending);
+                }
+
+                long now = System.currentTimeMillis();
+                pending.entrySet().removeIf(entry -> {
+                    if (entry.getValue() > now) {
+                        return false;
+                    }
+
+                    Runnable reload = files.get(entry.getKey());
+                    if (reload != null) {
+                        try {
+                            reload.run();
+                        } catch (Exception ex) {
+                            ViMain.logging().stack("Error while trying to reload config file %s".formatted(entry.getKey().getFileName()), ex);
+                        }
+                    }
+                    return true;
+                });
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // closed
+        }
+    }
+
+    // adds every registered file that changed to pending, and moves its deadline back if it was already pending
+    private void collect(WatchKey key, Map<Path, Long> pending) {
+        Path directory = directories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null || !(event.context() instanceof Path name)) {
+                continue;
+            }
+
+            Path path = directory.resolve(name);
+            if (files.containsKey(path)) {
+                pending.put(path, System.currentTimeMillis() + DEBOUNCE_MS);
+            }
+        }
+
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+}
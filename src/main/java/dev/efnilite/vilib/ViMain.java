@@ -1,5 +1,8 @@
 package dev.efnilite.vilib;
 
+import dev.efnilite.vilib.particle.ParticleListener;
+import dev.efnilite.vilib.serialization.PlayerInventoryCache;
+import dev.efnilite.vilib.serialization.SaveQueue;
 import dev.efnilite.vilib.util.Logging;
 import dev.efnilite.vilib.util.elevator.GitElevator;
 import dev.efnilite.vilib.util.elevator.VersionComparator;
@@ -32,11 +35,15 @@ public class ViMain extends ViPlugin {
         instance = this;
         logging = new Logging(this);
 
-        logging.info("Enabled vilib " + getDescription().getVersion());
+        new ParticleListener().register();
+
+        logging.info("Enabled vilib %s", getDescription().getVersion());
     }
 
     @Override
     public void disable() {
+        PlayerInventoryCache.flushAll();
+        SaveQueue.drain();
     }
 
     @Override
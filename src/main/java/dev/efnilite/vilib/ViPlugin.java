@@ -3,9 +3,10 @@ package dev.efnilite.vilib;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import dev.efnilite.vilib.command.ViCommand;
-import dev.efnilite.vilib.util.Task;
+import dev.efnilite.vilib.util.Logging;
 import dev.efnilite.vilib.util.Version;
 import dev.efnilite.vilib.util.elevator.GitElevator;
+import dev.efnilite.vilib.util.elevator.UpdateChecker;
 import org.bukkit.Bukkit;
 import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
@@ -38,7 +39,9 @@ public abstract class ViPlugin extends JavaPlugin {
         return version;
     }
 
-    protected GitElevator elevator;
+    protected volatile GitElevator elevator;
+
+    private final ConfigRegistry configRegistry = new ConfigRegistry(this);
 
     @Override
     public void onEnable() {
@@ -46,23 +49,32 @@ public abstract class ViPlugin extends JavaPlugin {
 
         gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().disableHtmlEscaping().create();
 
-        Task.create(this).async().repeat(GitElevator.CHECK_INTERVAL).execute(() -> {
+        enable();
+
+        // resolved after enabling, since the elevator may depend on e.g. config files loaded in enable()
+        try {
             if (elevator == null) {
                 elevator = getElevator();
             }
 
             if (elevator != null) {
-                elevator.check();
+                UpdateChecker.register(this, elevator);
             }
-        }).run();
-
-        enable();
+        } catch (Exception ex) {
+            getLogger().severe("There was an error while setting up the update checker: " + ex.getMessage());
+        }
     }
 
     @Override
     public void onDisable() {
         disable();
 
+        Logging.close(this);
+
+        UpdateChecker.unregister(this);
+
+        configRegistry.unwatch();
+
         if (elevator == null) {
             elevator = getElevator();
         }
@@ -82,7 +94,7 @@ public abstract class ViPlugin extends JavaPlugin {
 
     /**
      * What happens on disable of the plugin inheriting this library.
-     * Disabling will automatically cancel all active tasks and unregister all EventWatchers.
+     * Disabling will automatically cancel all active tasks, unregister all EventWatchers and close all {@link Logging} instances of this plugin.
      */
     public abstract void disable();
 
@@ -95,6 +107,15 @@ public abstract class ViPlugin extends JavaPlugin {
     @Nullable
     public abstract GitElevator getElevator();
 
+    /**
+     * Returns the config files of this plugin. Files are registered and loaded using the registry.
+     *
+     * @return the {@link ConfigRegistry} that belongs to this plugin
+     */
+    public ConfigRegistry getConfigRegistry() {
+        return configRegistry;
+    }
+
     /**
      * Register a command to this plugin.
      *
@@ -0,0 +1,177 @@
+package dev.efnilite.vilib.particle;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which players should receive an effect.
+ * The audience is resolved once per effect, after which every point is sent to each player separately.
+ * Players are filtered by distance, whether any chunk the effect covers is loaded, whether they have disabled effects,
+ * and optionally whether the effect is in front of them.
+ *
+ * @author Efnilite
+ */
+public final class ParticleAudience {
+
+    /**
+     * The default range in blocks, which is the range Minecraft uses for particles that aren't forced.
+     */
+    public static final double DEFAULT_RANGE = 32;
+
+    private static final Set<UUID> DISABLED = ConcurrentHashMap.newKeySet();
+
+    private double range = DEFAULT_RANGE;
+    private double viewCone = -1;
+
+    /**
+     * @return a new audience with the default range and no view cone.
+     */
+    public static ParticleAudience create() {
+        return new ParticleAudience();
+    }
+
+    /**
+     * Sets whether a player receives effects drawn using an audience.
+     * This is reset when the player quits.
+     *
+     * @param player  The player.
+     * @param enabled True if the player should receive effects, false if not.
+     */
+    public static void setEnabled(@NotNull Player player, boolean enabled) {
+        if (enabled) {
+            DISABLED.remove(player.getUniqueId());
+        } else {
+            DISABLED.add(player.getUniqueId());
+        }
+    }
+
+    /**
+     * @param player The player.
+     * @return true if the player receives effects drawn using an audience, false if not.
+     */
+    public static boolean isEnabled(@NotNull Player player) {
+        return !DISABLED.contains(player.getUniqueId());
+    }
+
+    /**
+     * Removes the stored settings of a player. Called when the player quits.
+     *
+     * @param player The player.
+     */
+    static void forget(@NotNull Player player) {
+        DISABLED.remove(player.getUniqueId());
+    }
+
+    /**
+     * @param range The max distance in blocks between a player and an effect.
+     * @return this instance.
+     */
+    public ParticleAudience range(double range) {
+        this.range = range;
+        return this;
+    }
+
+    /**
+     * Only includes players that are looking towards the effect.
+     *
+     * @param degrees The full angle of the cone in front of the player's eyes, e.g. 120.
+     * @return this instance.
+     */
+    public ParticleAudience viewCone(double degrees) {
+        this.viewCone = degrees;
+        return this;
+    }
+
+    /**
+     * Finds the players that should receive an effect.
+     *
+     * @param world  The world of the effect.
+     * @param x      The x coordinate of the effect's anchor.
+     * @param y      The y coordinate of the effect's anchor.
+     * @param z      The z coordinate of the effect's anchor.
+     * @param radius The distance from the anchor to the furthest point of the effect.
+     * @return the players that should receive the effect.
+     */
+    public List<Player> resolve(@NotNull World world, double x, double y, double z, double radius) {
+        List<Player> players = new ArrayList<>();
+
+        if (!isAnyChunkLoaded(world, x, z, radius)) {
+            return players;
+        }
+
+        double maxDistance = range + radius;
+        double halfCone = Math.toRadians(viewCone / 2);
+        Location location = new Location(world, 0, 0, 0); // reused for every player
+
+        for (Player player : world.getPlayers()) {
+            if (DISABLED.contains(player.getUniqueId())) {
+                continue;
+            }
+
+            player.getLocation(location);
+            double dx = x - location.getX();
+            double dy = y - (location.getY() + player.getEyeHeight());
+            double dz = z - location.getZ();
+            double distanceSquared = dx * dx + dy * dy + dz * dz;
+
+            double clientDistance = Math.min(maxDistance, player.getClientViewDistance() * 16 + radius);
+            if (distanceSquared > clientDistance * clientDistance) {
+                continue;
+            }
+
+            if (viewCone > 0 && !isInView(location, dx, dy, dz, distanceSquared, halfCone, radius)) {
+                continue;
+            }
+
+            players.add(player);
+        }
+
+        return players;
+    }
+
+    // whether any chunk overlapping the bounds of the effect is loaded, since points far from the anchor may be in other chunks
+    private static boolean isAnyChunkLoaded(World world, double x, double z, double radius) {
+        int minX = (int) Math.floor(x - radius) >> 4;
+        int maxX = (int) Math.floor(x + radius) >> 4;
+        int minZ = (int) Math.floor(z - radius) >> 4;
+        int maxZ = (int) Math.floor(z + radius) >> 4;
+
+        for (int chunkX = minX; chunkX <= maxX; chunkX++) {
+            for (int chunkZ = minZ; chunkZ <= maxZ; chunkZ++) {
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    // whether the effect around the anchor overlaps with the cone in front of the player
+    private static boolean isInView(Location location, double dx, double dy, double dz, double distanceSquared, double halfCone, double radius) {
+        double distance = Math.sqrt(distanceSquared);
+        if (distance <= radius + 1) { // player is inside the effect
+            return true;
+        }
+
+        double yaw = Math.toRadians(location.getYaw());
+        double pitch = Math.toRadians(location.getPitch());
+        double lookX = -Math.sin(yaw) * Math.cos(pitch);
+        double lookY = -Math.sin(pitch);
+        double lookZ = Math.cos(yaw) * Math.cos(pitch);
+
+        // widen the cone by the angle the effect takes up from the player's point of view
+        double angle = Math.min(Math.PI, halfCone + Math.asin(Math.min(1, radius / distance)));
+        double dot = (lookX * dx + lookY * dy + lookZ * dz) / distance;
+
+        return dot >= Math.cos(angle);
+    }
+}
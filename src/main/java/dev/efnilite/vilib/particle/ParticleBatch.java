@@ -0,0 +1,196 @@
+package dev.efnilite.vilib.particle;
+
+import dev.efnilite.vilib.ViMain;
+import dev.efnilite.vilib.util.Task;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the shapes drawn during a tick and sends them all at once.
+ * At the end of every tick the main thread resolves the audience of every queued shape and reserves each
+ * player's {@link ParticleBudget}, then hands the batch off.
+ * The points are then sent off the main thread when the server supports it (Paper), or on the main thread if it doesn't.
+ * Every point is still sent with its own spawn call, since the API has no way to send several particles in one packet.
+ * <p>
+ * The task that sends batches stops when a tick has nothing queued, and starts again with the next queued shape.
+ *
+ * @author Efnilite
+ */
+public final class ParticleBatch {
+
+    /**
+     * Whether this server can send particles off the main thread.
+     */
+    public static final boolean ASYNC_SUPPORTED = isClassPresent("io.papermc.paper.configuration.Configuration")
+            || isClassPresent("com.destroystokyo.paper.PaperConfig");
+
+    private static final Object LOCK = new Object();
+    private static final AtomicLong SENT = new AtomicLong();
+
+    private static List<Entry> buffer = new ArrayList<>();
+    private static BukkitTask task;
+    private static volatile boolean async = ASYNC_SUPPORTED;
+
+    private ParticleBatch() {
+
+    }
+
+    /**
+     * Queues a shape to be drawn at the end of this tick.
+     *
+     * @param shape    The shape.
+     * @param at       The anchor.
+     * @param data     The particle data.
+     * @param audience The audience, which is resolved once the batch is sent.
+     */
+    public static <T> void queue(@NotNull ParticleShape shape, @NotNull Location at, @NotNull ParticleData<T> data, @NotNull ParticleAudience audience) {
+        World world = at.getWorld();
+        if (world == null) {
+            throw new NullPointerException("World is null (ParticleBatch#queue)");
+        }
+
+        queue(shape, world, at.getX(), at.getY(), at.getZ(), data, audience);
+    }
+
+    /**
+     * Queues a shape to be drawn at the end of this tick.
+     *
+     * @param shape    The shape.
+     * @param world    The world.
+     * @param x        The x coordinate of the anchor.
+     * @param y        The y coordinate of the anchor.
+     * @param z        The z coordinate of the anchor.
+     * @param data     The particle data.
+     * @param audience The audience, which is resolved once the batch is sent.
+     */
+    public static <T> void queue(@NotNull ParticleShape shape, @NotNull World world, double x, double y, double z,
+                                 @NotNull ParticleData<T> data, @NotNull ParticleAudience audience) {
+        queue(shape, world, x, y, z, data.freeze(), audience);
+    }
+
+    /**
+     * Queues a shape to be drawn at the end of this tick.
+     *
+     * @param shape    The shape.
+     * @param world    The world.
+     * @param x        The x coordinate of the anchor.
+     * @param y        The y coordinate of the anchor.
+     * @param z        The z coordinate of the anchor.
+     * @param template The particle template.
+     * @param audience The audience, which is resolved once the batch is sent.
+     */
+    public static <T> void queue(@NotNull ParticleShape shape, @NotNull World world, double x, double y, double z,
+                                 @NotNull ParticleTemplate<T> template, @NotNull ParticleAudience audience) {
+        synchronized (LOCK) {
+            buffer.add(new Entry(shape, world, x, y, z, template, audience));
+
+            if (task == null || task.isCancelled()) {
+                task = Task.create(ViMain.getPlugin()).repeat(1).execute(ParticleBatch::flush).run();
+            }
+        }
+    }
+
+    /**
+     * Sets whether batches are sent off the main thread. Ignored when the server doesn't support it.
+     *
+     * @param async True to send batches async, false to send them on the main thread.
+     */
+    public static void setAsync(boolean async) {
+        ParticleBatch.async = async && ASYNC_SUPPORTED;
+    }
+
+    /**
+     * @return the amount of shapes waiting to be sent.
+     */
+    public static int getQueued() {
+        synchronized (LOCK) {
+            return buffer.size();
+        }
+    }
+
+    /**
+     * @return the amount of shapes sent since startup.
+     */
+    public static long getSent() {
+        return SENT.get();
+    }
+
+    // swaps the buffer, resolves every audience and reserves the budgets on the main thread, then hands the batch off
+    private static void flush() {
+        List<Entry> entries;
+        synchronized (LOCK) {
+            if (buffer.isEmpty()) {
+                task.cancel();
+                task = null;
+                return;
+            }
+
+            entries = buffer;
+            buffer = new ArrayList<>(entries.size());
+        }
+
+        for (Entry entry : entries) {
+            entry.recipients = entry.audience.resolve(entry.world, entry.x, entry.y, entry.z, entry.shape.getRadius());
+            entry.strides = new int[entry.recipients.size()];
+
+            for (int i = 0; i < entry.strides.length; i++) {
+                entry.strides[i] = entry.shape.reserve(entry.recipients.get(i), entry.x, entry.y, entry.z);
+            }
+        }
+
+        if (async) {
+            Task.create(ViMain.getPlugin()).async().execute(() -> send(entries)).run();
+        } else {
+            send(entries);
+        }
+    }
+
+    private static void send(List<Entry> entries) {
+        for (Entry entry : entries) {
+            for (int i = 0; i < entry.strides.length; i++) {
+                entry.shape.draw(entry.recipients.get(i), entry.x, entry.y, entry.z, entry.template, entry.strides[i]);
+            }
+        }
+
+        SENT.addAndGet(entries.size());
+    }
+
+    private static boolean isClassPresent(String name) {
+        try {
+            Class.forName(name);
+            return true;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        }
+    }
+
+    private static final class Entry {
+
+        private final ParticleShape shape;
+        private final World world;
+        private final double x;
+        private final double y;
+        private final double z;
+        private final ParticleTemplate<?> template;
+        private final ParticleAudience audience;
+        private List<Player> recipients;
+        private int[] strides; // the stride of every recipient, see ParticleBudget#reserve
+
+        private Entry(ParticleShape shape, World world, double x, double y, double z, ParticleTemplate<?> template, ParticleAudience audience) {
+            this.shape = shape;
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.template = template;
+            this.audience = audience;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package dev.efnilite.vilib.particle;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the amount of particles each player receives per tick.
+ * Shapes are drawn with fewer points (a lower level of detail) when the player is far away or when the player's budget is running out.
+ * When a player's budget is empty, shapes are not drawn for that player until the next tick.
+ * <p>
+ * The budget only applies to draws which opt in, like {@link ParticleShape#drawBudgeted(Player, double, double, double, ParticleTemplate)}
+ * and draws using a {@link ParticleAudience}, including {@link ParticleBatch}. Other draws for a single player always draw every point.
+ *
+ * @author Efnilite
+ */
+public final class ParticleBudget {
+
+    /**
+     * The default amount of particles a player may receive per tick.
+     */
+    public static final int DEFAULT_PER_TICK = 1500;
+
+    /**
+     * Players closer than this distance in blocks always see shapes with full detail, if their budget allows it.
+     */
+    public static final double FULL_DETAIL_DISTANCE = 16;
+
+    private static final Map<UUID, Usage> USAGE = new ConcurrentHashMap<>();
+
+    private static final AtomicLong EMITTED = new AtomicLong();
+    private static final AtomicLong SIMPLIFIED = new AtomicLong();
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    // reused to get the location of players without allocating
+    private static final ThreadLocal<Location> LOCATION = ThreadLocal.withInitial(() -> new Location(null, 0, 0, 0));
+
+    private static volatile int perTick = DEFAULT_PER_TICK;
+
+    private ParticleBudget() {
+
+    }
+
+    /**
+     * Sets the amount of particles a player may receive per tick.
+     *
+     * @param amount The amount of particles. Use {@link Integer#MAX_VALUE} to disable the budget.
+     */
+    public static void setPerTick(int amount) {
+        perTick = amount;
+    }
+
+    /**
+     * @return the amount of particles a player may receive per tick.
+     */
+    public static int getPerTick() {
+        return perTick;
+    }
+
+    /**
+     * Reserves particles of a player's budget for a shape.
+     * The returned stride is the step between drawn points: 1 draws every point, 2 every other point, etc.
+     *
+     * @param player          The player.
+     * @param points          The amount of points in the shape.
+     * @param distanceSquared The squared distance between the player and the shape.
+     * @return the stride, or 0 if nothing should be drawn.
+     */
+    public static int reserve(@NotNull Player player, int points, double distanceSquared) {
+        if (points == 0) {
+            return 1;
+        }
+
+        // lower detail linearly with distance
+        int stride = 1;
+        if (distanceSquared > FULL_DETAIL_DISTANCE * FULL_DETAIL_DISTANCE) {
+            stride = (int) (Math.sqrt(distanceSquared) / FULL_DETAIL_DISTANCE);
+        }
+
+        Usage usage = USAGE.computeIfAbsent(player.getUniqueId(), uuid -> new Usage());
+        int tick = Bukkit.getCurrentTick();
+
+        synchronized (usage) {
+            if (usage.tick != tick) {
+                usage.tick = tick;
+                usage.used = 0;
+            }
+
+            int remaining = perTick - usage.used;
+            if (remaining <= 0) {
+                DROPPED.addAndGet(points);
+                return 0;
+            }
+
+            // lower detail further to fit in the remaining budget
+            int drawn = (points + stride - 1) / stride;
+            if (drawn > remaining) {
+                stride = (points + remaining - 1) / remaining;
+                drawn = (points + stride - 1) / stride;
+            }
+
+            usage.used += drawn;
+            EMITTED.addAndGet(drawn);
+            SIMPLIFIED.addAndGet(points - drawn);
+        }
+
+        return stride;
+    }
+
+    /**
+     * Returns the squared distance between a player and the closest point of a box, which is 0 if the player is inside it.
+     *
+     * @param player The player.
+     * @param minX   The min x of the box.
+     * @param minY   The min y of the box.
+     * @param minZ   The min z of the box.
+     * @param maxX   The max x of the box.
+     * @param maxY   The max y of the box.
+     * @param maxZ   The max z of the box.
+     * @return the squared distance, which can be passed to {@link #reserve(Player, int, double)}.
+     */
+    public static double distanceSquared(@NotNull Player player, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        Location location = player.getLocation(LOCATION.get());
+
+        double dx = Math.max(0, Math.max(minX - location.getX(), location.getX() - maxX));
+        double dy = Math.max(0, Math.max(minY - location.getY(), location.getY() - maxY));
+        double dz = Math.max(0, Math.max(minZ - location.getZ(), location.getZ() - maxZ));
+
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Removes the stored usage of a player. Called when the player quits.
+     *
+     * @param player The player.
+     */
+    public static void forget(@NotNull Player player) {
+        USAGE.remove(player.getUniqueId());
+    }
+
+    /**
+     * @return the amount of particles sent since the last reset.
+     */
+    public static long getEmitted() {
+        return EMITTED.get();
+    }
+
+    /**
+     * @return the amount of particles skipped by lowering the detail of shapes since the last reset.
+     */
+    public static long getSimplified() {
+        return SIMPLIFIED.get();
+    }
+
+    /**
+     * @return the amount of particles not sent because a player's budget was empty since the last reset.
+     */
+    public static long getDropped() {
+        return DROPPED.get();
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public static void resetCounters() {
+        EMITTED.set(0);
+        SIMPLIFIED.set(0);
+        DROPPED.set(0);
+    }
+
+    private static final class Usage {
+
+        private int tick = -1;
+        private int used = 0;
+
+    }
+}
@@ -87,6 +87,13 @@ public class ParticleData<T> {
         return this;
     }
 
+    /**
+     * @return an immutable copy of the current values, which can safely be shared between threads.
+     */
+    public ParticleTemplate<T> freeze() {
+        return ParticleTemplate.of(this);
+    }
+
     public int getSize() {
         return size;
     }
@@ -0,0 +1,179 @@
+package dev.efnilite.vilib.particle;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Supplier;
+
+/**
+ * A long-lived effect which is redrawn by the {@link ParticleEffectEngine}.
+ * Example:
+ * <blockquote><code>ParticleEffect.of(ParticleShape.circle(2, 30), data).follow(player).period(5).lifetime(200).start();</code></blockquote>
+ *
+ * @author Efnilite
+ */
+public final class ParticleEffect {
+
+    private final ParticleShape shape;
+    private final ParticleTemplate<?> template;
+
+    private Location location;
+    private Entity entity;
+    private Supplier<Location> anchor;
+    private ParticleAudience audience = ParticleAudience.create();
+    private int period = 1;
+    private int lifetime = -1;
+
+    int phase;
+    int age;
+    private volatile boolean cancelled;
+
+    private ParticleEffect(ParticleShape shape, ParticleTemplate<?> template) {
+        this.shape = shape;
+        this.template = template;
+    }
+
+    /**
+     * @param shape The shape.
+     * @param data  The particle data, which is copied.
+     * @return a new effect, which has to be started using {@link #start()}.
+     */
+    public static ParticleEffect of(@NotNull ParticleShape shape, @NotNull ParticleData<?> data) {
+        return new ParticleEffect(shape, data.freeze());
+    }
+
+    /**
+     * @param shape    The shape.
+     * @param template The particle template.
+     * @return a new effect, which has to be started using {@link #start()}.
+     */
+    public static ParticleEffect of(@NotNull ParticleShape shape, @NotNull ParticleTemplate<?> template) {
+        return new ParticleEffect(shape, template);
+    }
+
+    /**
+     * @param location The fixed anchor of this effect, which is copied.
+     * @return this instance.
+     */
+    public ParticleEffect at(@NotNull Location location) {
+        this.location = location.clone();
+        this.entity = null;
+        this.anchor = null;
+        return this;
+    }
+
+    /**
+     * Anchors this effect to an entity. The effect stops when the entity is no longer valid.
+     *
+     * @param entity The entity.
+     * @return this instance.
+     */
+    public ParticleEffect follow(@NotNull Entity entity) {
+        this.entity = entity;
+        this.location = entity.getLocation();
+        this.anchor = null;
+        return this;
+    }
+
+    /**
+     * Anchors this effect to a changing location. The effect stops when the supplier returns null.
+     *
+     * @param anchor The supplier of the anchor.
+     * @return this instance.
+     */
+    public ParticleEffect anchor(@NotNull Supplier<@Nullable Location> anchor) {
+        this.anchor = anchor;
+        this.entity = null;
+        return this;
+    }
+
+    /**
+     * @param audience The audience this effect is drawn for.
+     * @return this instance.
+     */
+    public ParticleEffect audience(@NotNull ParticleAudience audience) {
+        this.audience = audience;
+        return this;
+    }
+
+    /**
+     * @param period The amount of ticks between each redraw.
+     * @return this instance.
+     */
+    public ParticleEffect period(int period) {
+        this.period = Math.max(1, period);
+        return this;
+    }
+
+    /**
+     * @param lifetime The amount of ticks after which this effect stops. -1 to never stop.
+     * @return this instance.
+     */
+    public ParticleEffect lifetime(int lifetime) {
+        this.lifetime = lifetime;
+        return this;
+    }
+
+    /**
+     * Registers this effect with the {@link ParticleEffectEngine}.
+     *
+     * @return this instance.
+     */
+    public ParticleEffect start() {
+        ParticleEffectEngine.register(this);
+        return this;
+    }
+
+    /**
+     * Stops this effect. It will be removed in the next tick.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if this effect has been cancelled, has expired or has lost its anchor.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // updates and returns the anchor, or null if the effect has lost its anchor
+    @Nullable
+    Location resolveAnchor() {
+        if (entity != null) {
+            if (!entity.isValid()) {
+                return null;
+            }
+            return entity.getLocation(location);
+        }
+
+        if (anchor != null) {
+            return anchor.get();
+        }
+
+        return location;
+    }
+
+    boolean isExpired() {
+        return cancelled || (lifetime >= 0 && age >= lifetime);
+    }
+
+    ParticleShape getShape() {
+        return shape;
+    }
+
+    ParticleTemplate<?> getTemplate() {
+        return template;
+    }
+
+    ParticleAudience getAudience() {
+        return audience;
+    }
+
+    int getPeriod() {
+        return period;
+    }
+}
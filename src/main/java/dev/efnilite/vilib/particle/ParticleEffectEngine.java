@@ -0,0 +1,197 @@
+package dev.efnilite.vilib.particle;
+
+import dev.efnilite.vilib.ViMain;
+import dev.efnilite.vilib.util.Task;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Draws all registered {@link ParticleEffect}s and {@link ParticleTrail}s from a single task, instead of every effect scheduling its own.
+ * Effects with the same period are spread over different ticks to keep the load per tick even,
+ * and effects without any players in their audience are skipped.
+ *
+ * @author Efnilite
+ */
+public final class ParticleEffectEngine {
+
+    private static final Object LOCK = new Object();
+    private static final List<ParticleEffect> EFFECTS = new ArrayList<>();
+    private static final List<ParticleTrail> TRAILS = new ArrayList<>();
+
+    private static BukkitTask task;
+    private static long tick = 0;
+    private static int nextPhase = 0;
+
+    private static long emitted = 0;
+    private static long culled = 0;
+
+    private ParticleEffectEngine() {
+
+    }
+
+    /**
+     * Registers an effect. Effects are usually registered using {@link ParticleEffect#start()}.
+     *
+     * @param effect The effect.
+     */
+    public static void register(@NotNull ParticleEffect effect) {
+        synchronized (LOCK) {
+            effect.phase = nextPhase++;
+            EFFECTS.add(effect);
+            schedule();
+        }
+    }
+
+    /**
+     * Registers a trail. Trails are usually registered using {@link ParticleTrail#start()}.
+     *
+     * @param trail The trail.
+     */
+    public static void register(@NotNull ParticleTrail trail) {
+        synchronized (LOCK) {
+            trail.phase = nextPhase++;
+            TRAILS.add(trail);
+            schedule();
+        }
+    }
+
+    private static void schedule() {
+        if (task == null || task.isCancelled()) {
+            task = Task.create(ViMain.getPlugin()).repeat(1).execute(ParticleEffectEngine::tick).run();
+        }
+    }
+
+    /**
+     * Cancels every registered effect and trail.
+     */
+    public static void clear() {
+        synchronized (LOCK) {
+            EFFECTS.forEach(ParticleEffect::cancel);
+            TRAILS.forEach(ParticleTrail::cancel);
+        }
+    }
+
+    private static void tick() {
+        synchronized (LOCK) {
+            Iterator<ParticleEffect> iterator = EFFECTS.iterator();
+            while (iterator.hasNext()) {
+                ParticleEffect effect = iterator.next();
+
+                if (effect.isExpired()) {
+                    effect.cancel();
+                    iterator.remove();
+                    continue;
+                }
+
+                effect.age++;
+                if ((tick + effect.phase) % effect.getPeriod() != 0) {
+                    continue;
+                }
+
+                Location anchor = effect.resolveAnchor();
+                World world = anchor == null ? null : anchor.getWorld();
+                if (world == null) {
+                    effect.cancel();
+                    iterator.remove();
+                    continue;
+                }
+
+                draw(effect, world, anchor.getX(), anchor.getY(), anchor.getZ());
+            }
+
+            tickTrails();
+            tick++;
+        }
+    }
+
+    private static void tickTrails() {
+        Iterator<ParticleTrail> iterator = TRAILS.iterator();
+        while (iterator.hasNext()) {
+            ParticleTrail trail = iterator.next();
+
+            if (trail.isExpired()) {
+                trail.cancel();
+                iterator.remove();
+                continue;
+            }
+
+            trail.age++;
+            if ((tick + trail.phase) % trail.getPeriod() != 0 || !trail.sample()) {
+                continue;
+            }
+
+            int drawn = trail.draw();
+            if (drawn < 0) {
+                culled++;
+            } else {
+                emitted += drawn;
+            }
+        }
+    }
+
+    private static void draw(ParticleEffect effect, World world, double x, double y, double z) {
+        ParticleShape shape = effect.getShape();
+        List<Player> players = effect.getAudience().resolve(world, x, y, z, shape.getRadius());
+
+        if (players.isEmpty()) {
+            culled++;
+            return;
+        }
+
+        for (Player player : players) {
+            emitted += shape.drawBudgeted(player, x, y, z, effect.getTemplate());
+        }
+    }
+
+    /**
+     * @return the amount of effects and trails that are being drawn.
+     */
+    public static int getActiveCount() {
+        synchronized (LOCK) {
+            return EFFECTS.size() + TRAILS.size();
+        }
+    }
+
+    /**
+     * @return the amount of particles sent by all effects and trails since startup.
+     */
+    public static long getEmitted() {
+        synchronized (LOCK) {
+            return emitted;
+        }
+    }
+
+    /**
+     * @return the amount of times an effect or trail was skipped because nobody could see it.
+     */
+    public static long getCulled() {
+        synchronized (LOCK) {
+            return culled;
+        }
+    }
+
+    /**
+     * @return a copy of all effects that are being drawn.
+     */
+    public static List<ParticleEffect> getEffects() {
+        synchronized (LOCK) {
+            return new ArrayList<>(EFFECTS);
+        }
+    }
+
+    /**
+     * @return a copy of all trails that are being drawn.
+     */
+    public static List<ParticleTrail> getTrails() {
+        synchronized (LOCK) {
+            return new ArrayList<>(TRAILS);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package dev.efnilite.vilib.particle;
+
+import dev.efnilite.vilib.event.EventWatcher;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Removes the particle state of players when they quit, so it doesn't build up over time.
+ * Registered by vilib on enable.
+ *
+ * @author Efnilite
+ */
+public final class ParticleListener implements EventWatcher {
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void quit(PlayerQuitEvent event) {
+        ParticleAudience.forget(event.getPlayer());
+        ParticleBudget.forget(event.getPlayer());
+    }
+}
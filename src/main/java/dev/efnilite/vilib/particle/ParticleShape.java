@@ -0,0 +1,658 @@
+package dev.efnilite.vilib.particle;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.util.Vector;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A shape made of particles.
+ * Shapes are compiled once into a packed array of offsets relative to an anchor, and cached by their parameters.
+ * Drawing a shape only translates the offsets to the anchor, so it requires no math or allocations per frame.
+ *
+ * @author Efnilite
+ */
+public final class ParticleShape {
+
+    /**
+     * The max amount of cached shapes. When exceeded, the least recently used shape is removed.
+     */
+    public static final int CACHE_SIZE = 512;
+
+    /**
+     * The amount of samples taken per curve segment before points are evenly distributed along it.
+     */
+    private static final int CURVE_SAMPLES = 64;
+
+    private static final Map<Key, ParticleShape> CACHE = newCache();
+
+    /**
+     * The offsets of every point, packed as x0, y0, z0, x1, y1, z1, ...
+     */
+    private final double[] points;
+
+    /**
+     * The distance from the anchor to the furthest point.
+     */
+    private final double radius;
+
+    /**
+     * The offsets of the min and max corners of the box around every point, packed as minX, minY, minZ, maxX, maxY, maxZ.
+     * The box doesn't include the anchor, unless a point is there. All zeros if there are no points.
+     */
+    private final double[] bounds = new double[6];
+
+    private ParticleShape(double[] points) {
+        this.points = points;
+
+        if (points.length > 0) {
+            Arrays.fill(bounds, 0, 3, Double.POSITIVE_INFINITY);
+            Arrays.fill(bounds, 3, 6, Double.NEGATIVE_INFINITY);
+        }
+
+        double max = 0;
+        for (int i = 0; i < points.length; i += 3) {
+            max = Math.max(max, points[i] * points[i] + points[i + 1] * points[i + 1] + points[i + 2] * points[i + 2]);
+
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[axis] = Math.min(bounds[axis], points[i + axis]);
+                bounds[axis + 3] = Math.max(bounds[axis + 3], points[i + axis]);
+            }
+        }
+        this.radius = Math.sqrt(max);
+    }
+
+    /**
+     * Creates a shape from custom offsets. The result is not cached.
+     *
+     * @param points The offsets of every point, packed as x0, y0, z0, x1, y1, z1, ...
+     * @return the shape.
+     */
+    public static ParticleShape of(double @NotNull [] points) {
+        if (points.length % 3 != 0) {
+            throw new IllegalArgumentException("Points length must be a multiple of 3, found %d".formatted(points.length));
+        }
+
+        return new ParticleShape(points.clone());
+    }
+
+    /**
+     * A flat circle around the anchor.
+     *
+     * @param radius The radius of the circle.
+     * @param amount The amount of particles.
+     * @return the shape.
+     * @throws IllegalArgumentException if amount is negative.
+     */
+    public static ParticleShape circle(double radius, int amount) {
+        checkAmount(amount);
+        return cached(new Key("circle", radius, amount), () -> {
+            double[] points = new double[amount * 3];
+            double increment = (2 * Math.PI) / amount; // calc degree per amount, 2 x pi x r = circumference
+
+            for (int i = 0; i < amount; i++) {
+                double angle = i * increment;
+                points[i * 3] = radius * Math.cos(angle);
+                points[i * 3 + 2] = radius * Math.sin(angle);
+            }
+
+            return points;
+        });
+    }
+
+    /**
+     * A line from the anchor to the anchor + (dx, dy, dz).
+     * The result is not cached, since lines are usually drawn between moving points and rarely repeat.
+     *
+     * @param dx              The x length of the line.
+     * @param dy              The y length of the line.
+     * @param dz              The z length of the line.
+     * @param distanceBetween The distance between particles in blocks.
+     * @return the shape.
+     * @throws IllegalArgumentException if distanceBetween is not positive.
+     */
+    public static ParticleShape line(double dx, double dy, double dz, double distanceBetween) {
+        PointBuffer buffer = new PointBuffer();
+        addLine(buffer, 0, 0, 0, dx, dy, dz, distanceBetween);
+        return new ParticleShape(buffer.toArray());
+    }
+
+    /**
+     * The edges of a box, with the anchor as its min corner.
+     *
+     * @param widthX          The x size of the box.
+     * @param height          The y size of the box.
+     * @param widthZ          The z size of the box.
+     * @param distanceBetween The distance between particles in blocks.
+     * @return the shape.
+     * @throws IllegalArgumentException if distanceBetween is not positive.
+     */
+    public static ParticleShape box(double widthX, double height, double widthZ, double distanceBetween) {
+        return Wireframe.box(widthX, height, widthZ, distanceBetween).getShape();
+    }
+
+    /**
+     * A sphere around the anchor, with points evenly distributed over its surface using a Fibonacci lattice.
+     *
+     * @param radius  The radius of the sphere.
+     * @param spacing The approximate distance between points in blocks.
+     * @return the shape.
+     * @throws IllegalArgumentException if spacing is not positive.
+     */
+    public static ParticleShape sphere(double radius, double spacing) {
+        checkSpacing(spacing);
+        return cached(new Key("sphere", radius, spacing), () -> {
+            int amount = Math.max(1, (int) Math.round(4 * Math.PI * radius * radius / (spacing * spacing)));
+            double[] points = new double[amount * 3];
+            double goldenAngle = Math.PI * (3 - Math.sqrt(5));
+
+            for (int i = 0; i < amount; i++) {
+                double y = 1 - 2 * (i + 0.5) / amount;
+                double ring = Math.sqrt(1 - y * y);
+                double angle = goldenAngle * i;
+
+                points[i * 3] = radius * ring * Math.cos(angle);
+                points[i * 3 + 1] = radius * y;
+                points[i * 3 + 2] = radius * ring * Math.sin(angle);
+            }
+
+            return points;
+        });
+    }
+
+    /**
+     * A helix going up from the anchor.
+     *
+     * @param radius  The radius of the helix.
+     * @param height  The height of the helix.
+     * @param turns   The amount of turns the helix makes.
+     * @param spacing The distance between points in blocks.
+     * @return the shape.
+     * @throws IllegalArgumentException if spacing is not positive.
+     */
+    public static ParticleShape helix(double radius, double height, double turns, double spacing) {
+        checkSpacing(spacing);
+        return cached(new Key("helix", radius, height, turns, spacing), () -> {
+            double around = 2 * Math.PI * radius * turns;
+            int segments = Math.max(1, (int) Math.ceil(Math.sqrt(around * around + height * height) / spacing));
+            double[] points = new double[(segments + 1) * 3];
+
+            for (int i = 0; i <= segments; i++) {
+                double t = (double) i / segments;
+                double angle = 2 * Math.PI * turns * t;
+
+                points[i * 3] = radius * Math.cos(angle);
+                points[i * 3 + 1] = height * t;
+                points[i * 3 + 2] = radius * Math.sin(angle);
+            }
+
+            return points;
+        });
+    }
+
+    /**
+     * A flat arc around the anchor. Angles are measured like in {@link #circle(double, int)}, from the positive x-axis towards the positive z-axis.
+     *
+     * @param radius  The radius of the arc.
+     * @param start   The start angle in degrees.
+     * @param end     The end angle in degrees.
+     * @param spacing The distance between points in blocks.
+     * @return the shape.
+     * @throws IllegalArgumentException if spacing is not positive.
+     */
+    public static ParticleShape arc(double radius, double start, double end, double spacing) {
+        checkSpacing(spacing);
+        return cached(new Key("arc", radius, start, end, spacing), () -> {
+            double from = Math.toRadians(start);
+            double angle = Math.toRadians(end) - from;
+            int segments = Math.max(1, (int) Math.ceil(Math.abs(angle) * radius / spacing));
+            double[] points = new double[(segments + 1) * 3];
+
+            for (int i = 0; i <= segments; i++) {
+                double current = from + angle * i / segments;
+
+                points[i * 3] = radius * Math.cos(current);
+                points[i * 3 + 2] = radius * Math.sin(current);
+            }
+
+            return points;
+        });
+    }
+
+    /**
+     * A flat regular polygon around the anchor, with the first corner on the positive x-axis.
+     * Every corner is drawn once.
+     *
+     * @param radius  The distance from the anchor to every corner.
+     * @param sides   The amount of sides.
+     * @param spacing The distance between points in blocks.
+     * @return the shape.
+     * @throws IllegalArgumentException if spacing is not positive.
+     */
+    public static ParticleShape polygon(double radius, int sides, double spacing) {
+        checkSpacing(spacing);
+        return cached(new Key("polygon", radius, sides, spacing), () -> {
+            PointBuffer buffer = new PointBuffer();
+
+            for (int side = 0; side < sides; side++) {
+                double angle1 = 2 * Math.PI * side / sides;
+                double angle2 = 2 * Math.PI * (side + 1) / sides;
+                double x1 = radius * Math.cos(angle1), z1 = radius * Math.sin(angle1);
+                double x2 = radius * Math.cos(angle2), z2 = radius * Math.sin(angle2);
+
+                // the end corner is the start corner of the next side
+                int segments = Math.max(1, (int) Math.ceil(Math.hypot(x2 - x1, z2 - z1) / spacing));
+                for (int i = 0; i < segments; i++) {
+                    double t = (double) i / segments;
+                    buffer.add(x1 + (x2 - x1) * t, 0, z1 + (z2 - z1) * t);
+                }
+            }
+
+            return buffer.toArray();
+        });
+    }
+
+    /**
+     * A cubic bezier curve, with points evenly distributed along the length of the curve.
+     * All control points are relative to the anchor.
+     *
+     * @param start    The start of the curve.
+     * @param control1 The first control point.
+     * @param control2 The second control point.
+     * @param end      The end of the curve.
+     * @param spacing  The distance between points in blocks.
+     * @return the shape.
+     * @throws IllegalArgumentException if spacing is not positive.
+     */
+    public static ParticleShape bezier(@NotNull Vector start, @NotNull Vector control1, @NotNull Vector control2, @NotNull Vector end, double spacing) {
+        checkSpacing(spacing);
+        double[] controls = pack(List.of(start, control1, control2, end));
+
+        return cached(new Key("bezier", append(controls, spacing)), () -> {
+            PointBuffer curve = new PointBuffer();
+
+            for (int i = 0; i <= CURVE_SAMPLES; i++) {
+                double t = (double) i / CURVE_SAMPLES;
+                double u = 1 - t;
+                double a = u * u * u, b = 3 * u * u * t, c = 3 * u * t * t, d = t * t * t;
+
+                curve.add(a * controls[0] + b * controls[3] + c * controls[6] + d * controls[9],
+                        a * controls[1] + b * controls[4] + c * controls[7] + d * controls[10],
+                        a * controls[2] + b * controls[5] + c * controls[8] + d * controls[11]);
+            }
+
+            return resample(curve.toArray(), spacing);
+        });
+    }
+
+    /**
+     * A smooth Catmull-Rom path which passes through every provided point, with points evenly distributed along the length of the path.
+     * All points are relative to the anchor.
+     *
+     * @param path    The points the path passes through. At least 2.
+     * @param spacing The distance between points in blocks.
+     * @return the shape.
+     * @throws IllegalArgumentException if spacing is not positive.
+     */
+    public static ParticleShape path(@NotNull List<Vector> path, double spacing) {
+        checkSpacing(spacing);
+        if (path.size() < 2) {
+            throw new IllegalArgumentException("Path needs at least 2 points, found %d".formatted(path.size()));
+        }
+
+        double[] controls = pack(path);
+
+        return cached(new Key("path", append(controls, spacing)), () -> {
+            PointBuffer curve = new PointBuffer();
+            int count = controls.length / 3;
+
+            for (int segment = 0; segment < count - 1; segment++) {
+                // the first and last points are repeated to make the path pass through them
+                int p0 = Math.max(0, segment - 1) * 3;
+                int p1 = segment * 3;
+                int p2 = (segment + 1) * 3;
+                int p3 = Math.min(count - 1, segment + 2) * 3;
+
+                for (int i = segment == 0 ? 0 : 1; i <= CURVE_SAMPLES; i++) {
+                    double t = (double) i / CURVE_SAMPLES;
+                    double t2 = t * t, t3 = t2 * t;
+
+                    double[] point = new double[3];
+                    for (int axis = 0; axis < 3; axis++) {
+                        point[axis] = 0.5 * ((2 * controls[p1 + axis])
+                                + (-controls[p0 + axis] + controls[p2 + axis]) * t
+                                + (2 * controls[p0 + axis] - 5 * controls[p1 + axis] + 4 * controls[p2 + axis] - controls[p3 + axis]) * t2
+                                + (-controls[p0 + axis] + 3 * controls[p1 + axis] - 3 * controls[p2 + axis] + controls[p3 + axis]) * t3);
+                    }
+                    curve.add(point[0], point[1], point[2]);
+                }
+            }
+
+            return resample(curve.toArray(), spacing);
+        });
+    }
+
+    // walks along a finely sampled curve and places a point every spacing blocks, including both ends
+    private static double[] resample(double[] curve, double spacing) {
+        PointBuffer buffer = new PointBuffer();
+        buffer.add(curve[0], curve[1], curve[2]);
+
+        double untilNext = spacing;
+        for (int i = 3; i < curve.length; i += 3) {
+            double x = curve[i - 3], y = curve[i - 2], z = curve[i - 1];
+            double dx = curve[i] - x, dy = curve[i + 1] - y, dz = curve[i + 2] - z;
+            double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+            double walked = 0;
+            while (length - walked >= untilNext) {
+                walked += untilNext;
+                double t = walked / length;
+                buffer.add(x + dx * t, y + dy * t, z + dz * t);
+                untilNext = spacing;
+            }
+            untilNext -= length - walked;
+        }
+
+        // the end is always drawn, unless the last point already is the end
+        if (spacing - untilNext > 1e-9) {
+            int last = curve.length - 3;
+            buffer.add(curve[last], curve[last + 1], curve[last + 2]);
+        }
+
+        return buffer.toArray();
+    }
+
+    static void checkSpacing(double spacing) {
+        if (spacing <= 0) {
+            throw new IllegalArgumentException("Spacing must be positive, found %s".formatted(spacing));
+        }
+    }
+
+    static void checkAmount(int amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount can't be negative, found %d".formatted(amount));
+        }
+    }
+
+    private static double[] pack(List<Vector> vectors) {
+        double[] packed = new double[vectors.size() * 3];
+        for (int i = 0; i < vectors.size(); i++) {
+            Vector vector = vectors.get(i);
+            packed[i * 3] = vector.getX();
+            packed[i * 3 + 1] = vector.getY();
+            packed[i * 3 + 2] = vector.getZ();
+        }
+        return packed;
+    }
+
+    private static double[] append(double[] array, double value) {
+        double[] appended = Arrays.copyOf(array, array.length + 1);
+        appended[array.length] = value;
+        return appended;
+    }
+
+    // adds evenly spaced points between two points, with both ends added once
+    private static void addLine(PointBuffer buffer, double x1, double y1, double z1, double x2, double y2, double z2, double distanceBetween) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double dz = z2 - z1;
+        int segments = segments(dx, dy, dz, distanceBetween);
+
+        buffer.add(x1, y1, z1);
+        for (int i = 1; i <= segments; i++) {
+            double t = (double) i / segments;
+            buffer.add(x1 + dx * t, y1 + dy * t, z1 + dz * t);
+        }
+    }
+
+    // the amount of segments of a line, so that no two points are further apart than distanceBetween
+    static int segments(double dx, double dy, double dz, double distanceBetween) {
+        checkSpacing(distanceBetween);
+        return (int) Math.ceil(Math.sqrt(dx * dx + dy * dy + dz * dz) / distanceBetween);
+    }
+
+    // a thread-safe map which removes the least recently used entry when it has more than CACHE_SIZE entries
+    static <V> Map<Key, V> newCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        });
+    }
+
+    private static ParticleShape cached(Key key, Supplier<double[]> compiler) {
+        ParticleShape shape = CACHE.get(key);
+        if (shape != null) {
+            return shape;
+        }
+
+        // compiling outside the lock may compile a shape twice, but never blocks other threads
+        shape = new ParticleShape(compiler.get());
+        CACHE.put(key, shape);
+        return shape;
+    }
+
+    /**
+     * Draws this shape for every player in the world.
+     *
+     * @param at   The anchor.
+     * @param data The particle data.
+     */
+    public <T> void draw(@NotNull Location at, @NotNull ParticleData<T> data) {
+        World world = at.getWorld();
+        if (world == null) {
+            throw new NullPointerException("World is null (ParticleShape#draw)");
+        }
+
+        draw(world, at.getX(), at.getY(), at.getZ(), data);
+    }
+
+    /**
+     * Draws this shape for every player in the world.
+     *
+     * @param world The world.
+     * @param x     The x coordinate of the anchor.
+     * @param y     The y coordinate of the anchor.
+     * @param z     The z coordinate of the anchor.
+     * @param data  The particle data.
+     */
+    public <T> void draw(@NotNull World world, double x, double y, double z, @NotNull ParticleData<T> data) {
+        draw(world, x, y, z, data.freeze());
+    }
+
+    /**
+     * Draws this shape for every player in the world.
+     *
+     * @param world    The world.
+     * @param x        The x coordinate of the anchor.
+     * @param y        The y coordinate of the anchor.
+     * @param z        The z coordinate of the anchor.
+     * @param template The particle template.
+     */
+    public <T> void draw(@NotNull World world, double x, double y, double z, @NotNull ParticleTemplate<T> template) {
+        for (int i = 0; i < points.length; i += 3) {
+            template.spawn(world, x + points[i], y + points[i + 1], z + points[i + 2]);
+        }
+    }
+
+    /**
+     * Draws every point of this shape for a single player.
+     * Use {@link #drawBudgeted(Player, double, double, double, ParticleTemplate)} to limit the amount of drawn points.
+     *
+     * @param at     The anchor.
+     * @param data   The particle data.
+     * @param player The player.
+     */
+    public <T> void draw(@NotNull Location at, @NotNull ParticleData<T> data, @NotNull Player player) {
+        draw(player, at.getX(), at.getY(), at.getZ(), data);
+    }
+
+    /**
+     * Draws every point of this shape for a single player.
+     * Use {@link #drawBudgeted(Player, double, double, double, ParticleTemplate)} to limit the amount of drawn points.
+     *
+     * @param player The player.
+     * @param x      The x coordinate of the anchor.
+     * @param y      The y coordinate of the anchor.
+     * @param z      The z coordinate of the anchor.
+     * @param data   The particle data.
+     */
+    public <T> void draw(@NotNull Player player, double x, double y, double z, @NotNull ParticleData<T> data) {
+        draw(player, x, y, z, data.freeze());
+    }
+
+    /**
+     * Draws every point of this shape for a single player.
+     * Use {@link #drawBudgeted(Player, double, double, double, ParticleTemplate)} to limit the amount of drawn points.
+     *
+     * @param player   The player.
+     * @param x        The x coordinate of the anchor.
+     * @param y        The y coordinate of the anchor.
+     * @param z        The z coordinate of the anchor.
+     * @param template The particle template.
+     */
+    public <T> void draw(@NotNull Player player, double x, double y, double z, @NotNull ParticleTemplate<T> template) {
+        for (int i = 0; i < points.length; i += 3) {
+            template.spawn(player, x + points[i], y + points[i + 1], z + points[i + 2]);
+        }
+    }
+
+    /**
+     * Draws this shape for a single player, within the player's {@link ParticleBudget}.
+     * Fewer points are drawn when the player is far away from the shape or when the budget is running out.
+     *
+     * @param player   The player.
+     * @param x        The x coordinate of the anchor.
+     * @param y        The y coordinate of the anchor.
+     * @param z        The z coordinate of the anchor.
+     * @param template The particle template.
+     * @return the amount of drawn points.
+     */
+    public <T> int drawBudgeted(@NotNull Player player, double x, double y, double z, @NotNull ParticleTemplate<T> template) {
+        return draw(player, x, y, z, template, reserve(player, x, y, z));
+    }
+
+    // reserves the points of this shape in the player's budget, see ParticleBudget#reserve
+    int reserve(Player player, double x, double y, double z) {
+        double distanceSquared = ParticleBudget.distanceSquared(player,
+                x + bounds[0], y + bounds[1], z + bounds[2], x + bounds[3], y + bounds[4], z + bounds[5]);
+
+        return ParticleBudget.reserve(player, size(), distanceSquared);
+    }
+
+    // draws every stride-th point, or nothing if stride is 0
+    <T> int draw(Player player, double x, double y, double z, ParticleTemplate<T> template, int stride) {
+        if (stride == 0) {
+            return 0;
+        }
+
+        int drawn = 0;
+        for (int i = 0; i < points.length; i += 3 * stride) {
+            template.spawn(player, x + points[i], y + points[i + 1], z + points[i + 2]);
+            drawn++;
+        }
+        return drawn;
+    }
+
+    /**
+     * Draws this shape for every player in the audience. The audience is resolved once for the entire shape.
+     * The amount of drawn points is limited by each player's {@link ParticleBudget}.
+     *
+     * @param at       The anchor.
+     * @param data     The particle data.
+     * @param audience The audience.
+     */
+    public <T> void draw(@NotNull Location at, @NotNull ParticleData<T> data, @NotNull ParticleAudience audience) {
+        draw(at, data.freeze(), audience);
+    }
+
+    /**
+     * Draws this shape for every player in the audience. The audience is resolved once for the entire shape.
+     * The amount of drawn points is limited by each player's {@link ParticleBudget}.
+     *
+     * @param at       The anchor.
+     * @param template The particle template.
+     * @param audience The audience.
+     */
+    public <T> void draw(@NotNull Location at, @NotNull ParticleTemplate<T> template, @NotNull ParticleAudience audience) {
+        World world = at.getWorld();
+        if (world == null) {
+            throw new NullPointerException("World is null (ParticleShape#draw)");
+        }
+
+        double x = at.getX();
+        double y = at.getY();
+        double z = at.getZ();
+
+        for (Player player : audience.resolve(world, x, y, z, radius)) {
+            drawBudgeted(player, x, y, z, template);
+        }
+    }
+
+    /**
+     * @return the distance from the anchor to the furthest point of this shape.
+     */
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return the amount of points in this shape.
+     */
+    public int size() {
+        return points.length / 3;
+    }
+
+    /**
+     * @return a copy of the offsets of every point, packed as x0, y0, z0, x1, y1, z1, ...
+     */
+    public double[] getPoints() {
+        return points.clone();
+    }
+
+    // the type and parameters of a cached shape
+    record Key(String type, double... params) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && type.equals(key.type) && Arrays.equals(params, key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + Arrays.hashCode(params);
+        }
+    }
+
+    /**
+     * Growable array of points used while compiling.
+     */
+    private static final class PointBuffer {
+
+        private double[] points = new double[48];
+        private int length = 0;
+
+        void add(double x, double y, double z) {
+            if (length + 3 > points.length) {
+                points = Arrays.copyOf(points, points.length * 2);
+            }
+
+            points[length++] = x;
+            points[length++] = y;
+            points[length++] = z;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(points, length);
+        }
+    }
+}
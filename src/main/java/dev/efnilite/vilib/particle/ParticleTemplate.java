@@ -0,0 +1,94 @@
+package dev.efnilite.vilib.particle;
+
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable version of {@link ParticleData}, which can safely be shared between threads.
+ * Every spawn is a single call with only the coordinates of the point, since all other arguments are fixed.
+ * Methods that change a value return a new instance.
+ *
+ * @param type    The type of particle
+ * @param data    The possible data associated with this particle (colour, etc.)
+ * @param size    The size of the particle
+ * @param speed   The speed of the particle
+ * @param offsetX The max x offset in moving
+ * @param offsetY The max y offset in moving
+ * @param offsetZ The max z offset in moving
+ * @author Efnilite
+ */
+public record ParticleTemplate<T>(@NotNull Particle type, @Nullable T data, int size, double speed,
+                                  double offsetX, double offsetY, double offsetZ) {
+
+    private static final Map<ParticleTemplate<?>, ParticleTemplate<?>> INTERNED = new ConcurrentHashMap<>();
+
+    /**
+     * @param data The particle data.
+     * @return an immutable copy of the current values of data.
+     */
+    public static <T> ParticleTemplate<T> of(@NotNull ParticleData<T> data) {
+        return new ParticleTemplate<>(data.getType(), data.getData(), data.getSize(), data.getSpeed(),
+                data.getOffsetX(), data.getOffsetY(), data.getOffsetZ());
+    }
+
+    /**
+     * Returns the shared instance which is equal to this template, so effects using the same particles use the same instance.
+     * Interned templates are never removed, so this should only be used for templates that live as long as the plugin.
+     *
+     * @return the shared instance.
+     */
+    @SuppressWarnings("unchecked")
+    public ParticleTemplate<T> intern() {
+        return (ParticleTemplate<T>) INTERNED.computeIfAbsent(this, key -> key);
+    }
+
+    /**
+     * Spawns this particle for every player in the world.
+     *
+     * @param world The world.
+     * @param x     The x coordinate.
+     * @param y     The y coordinate.
+     * @param z     The z coordinate.
+     */
+    public void spawn(@NotNull World world, double x, double y, double z) {
+        world.spawnParticle(type, x, y, z, size, offsetX, offsetY, offsetZ, speed, data);
+    }
+
+    /**
+     * Spawns this particle for a single player.
+     *
+     * @param player The player.
+     * @param x      The x coordinate.
+     * @param y      The y coordinate.
+     * @param z      The z coordinate.
+     */
+    public void spawn(@NotNull Player player, double x, double y, double z) {
+        player.spawnParticle(type, x, y, z, size, offsetX, offsetY, offsetZ, speed, data);
+    }
+
+    public ParticleTemplate<T> withSize(int size) {
+        return new ParticleTemplate<>(type, data, size, speed, offsetX, offsetY, offsetZ);
+    }
+
+    public ParticleTemplate<T> withSpeed(double speed) {
+        return new ParticleTemplate<>(type, data, size, speed, offsetX, offsetY, offsetZ);
+    }
+
+    public ParticleTemplate<T> withOffset(double offsetX, double offsetY, double offsetZ) {
+        return new ParticleTemplate<>(type, data, size, speed, offsetX, offsetY, offsetZ);
+    }
+
+    public <N> ParticleTemplate<N> withData(@Nullable N data) {
+        return new ParticleTemplate<>(type, data, size, speed, offsetX, offsetY, offsetZ);
+    }
+
+    public ParticleTemplate<T> withType(@NotNull Particle type) {
+        return new ParticleTemplate<>(type, data, size, speed, offsetX, offsetY, offsetZ);
+    }
+}
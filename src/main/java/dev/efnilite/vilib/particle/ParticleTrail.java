@@ -0,0 +1,297 @@
+package dev.efnilite.vilib.particle;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A trail behind a moving entity, which is drawn by the {@link ParticleEffectEngine}.
+ * The position of the entity is sampled into a ring buffer, and the points between samples are interpolated,
+ * so trails look smooth even when the entity is only sampled every few ticks.
+ * The trail stops when the entity is no longer valid.
+ * Example:
+ * <blockquote><code>ParticleTrail.of(player, data).length(10).period(2).spacing(0.2).start();</code></blockquote>
+ *
+ * @author Efnilite
+ */
+public final class ParticleTrail {
+
+    /**
+     * When the entity moves further than this between two samples, it's assumed to have teleported and the trail restarts.
+     */
+    public static final double MAX_GAP = 8;
+
+    private final Entity entity;
+    private final ParticleTemplate<?> template;
+    private final Location scratch;
+
+    private ParticleAudience audience = ParticleAudience.create();
+    private int period = 2;
+    private int lifetime = -1;
+    private double spacing = 0.25;
+    private double offsetY = 0;
+
+    private double[] samples = new double[20 * 3];
+    private int head = 0;
+    private int count = 0;
+    private World world;
+
+    // reused between draws, grown when needed
+    private double[] points = new double[64 * 3];
+    private int pointCount;
+
+    int phase;
+    int age;
+    private volatile boolean cancelled;
+
+    private ParticleTrail(Entity entity, ParticleTemplate<?> template) {
+        this.entity = entity;
+        this.template = template;
+        this.scratch = entity.getLocation();
+    }
+
+    /**
+     * @param entity The entity.
+     * @param data   The particle data, which is copied.
+     * @return a new trail, which has to be started using {@link #start()}.
+     */
+    public static ParticleTrail of(@NotNull Entity entity, @NotNull ParticleData<?> data) {
+        return new ParticleTrail(entity, data.freeze());
+    }
+
+    /**
+     * @param entity   The entity.
+     * @param template The particle template.
+     * @return a new trail, which has to be started using {@link #start()}.
+     */
+    public static ParticleTrail of(@NotNull Entity entity, @NotNull ParticleTemplate<?> template) {
+        return new ParticleTrail(entity, template);
+    }
+
+    /**
+     * @param length The amount of samples in the trail. Clears the current samples.
+     * @return this instance.
+     */
+    public ParticleTrail length(int length) {
+        this.samples = new double[Math.max(2, length) * 3];
+        this.head = 0;
+        this.count = 0;
+        return this;
+    }
+
+    /**
+     * @param period The amount of ticks between each sample, which is also when the trail is redrawn.
+     * @return this instance.
+     */
+    public ParticleTrail period(int period) {
+        this.period = Math.max(1, period);
+        return this;
+    }
+
+    /**
+     * @param spacing The max distance between interpolated points in blocks.
+     * @return this instance.
+     */
+    public ParticleTrail spacing(double spacing) {
+        if (spacing <= 0) {
+            throw new IllegalArgumentException("Spacing must be positive (ParticleTrail#spacing)");
+        }
+
+        this.spacing = spacing;
+        return this;
+    }
+
+    /**
+     * @param offsetY The y offset from the entity's location, e.g. to draw the trail at the centre of the entity.
+     * @return this instance.
+     */
+    public ParticleTrail offset(double offsetY) {
+        this.offsetY = offsetY;
+        return this;
+    }
+
+    /**
+     * @param audience The audience this trail is drawn for.
+     * @return this instance.
+     */
+    public ParticleTrail audience(@NotNull ParticleAudience audience) {
+        this.audience = audience;
+        return this;
+    }
+
+    /**
+     * @param lifetime The amount of ticks after which this trail stops. -1 to never stop.
+     * @return this instance.
+     */
+    public ParticleTrail lifetime(int lifetime) {
+        this.lifetime = lifetime;
+        return this;
+    }
+
+    /**
+     * Registers this trail with the {@link ParticleEffectEngine}.
+     *
+     * @return this instance.
+     */
+    public ParticleTrail start() {
+        ParticleEffectEngine.register(this);
+        return this;
+    }
+
+    /**
+     * Stops this trail. It will be removed in the next tick.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if this trail has been cancelled, has expired or its entity is no longer valid.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the entity this trail follows.
+     */
+    public Entity getEntity() {
+        return entity;
+    }
+
+    boolean isExpired() {
+        return cancelled || (lifetime >= 0 && age >= lifetime) || !entity.isValid();
+    }
+
+    int getPeriod() {
+        return period;
+    }
+
+    // adds the current position of the entity to the ring buffer
+    // returns false if the entity has no world
+    boolean sample() {
+        entity.getLocation(scratch);
+        World current = scratch.getWorld();
+        if (current == null) {
+            return false;
+        }
+
+        double x = scratch.getX();
+        double y = scratch.getY() + offsetY;
+        double z = scratch.getZ();
+
+        if (current != world) {
+            world = current;
+            count = 0;
+        } else if (count > 0) {
+            int last = ((head + samples.length - 3) % samples.length);
+            double dx = x - samples[last];
+            double dy = y - samples[last + 1];
+            double dz = z - samples[last + 2];
+
+            if (dx * dx + dy * dy + dz * dz > MAX_GAP * MAX_GAP) {
+                count = 0;
+            }
+        }
+
+        samples[head] = x;
+        samples[head + 1] = y;
+        samples[head + 2] = z;
+        head = (head + 3) % samples.length;
+        count = Math.min(count + 1, samples.length / 3);
+        return true;
+    }
+
+    // draws the interpolated trail and returns the amount of drawn points
+    // returns -1 if nobody could see it
+    int draw() {
+        if (count < 2) {
+            return 0;
+        }
+
+        interpolate();
+
+        // the newest sample is the centre of the audience, the oldest sample is usually the furthest away
+        int newest = (head + samples.length - 3) % samples.length;
+        double x = samples[newest];
+        double y = samples[newest + 1];
+        double z = samples[newest + 2];
+        double radiusSquared = 0;
+        double minX = x, minY = y, minZ = z, maxX = x, maxY = y, maxZ = z;
+        for (int i = 0; i < count; i++) {
+            int index = (head + samples.length - (i + 1) * 3) % samples.length;
+            double dx = samples[index] - x;
+            double dy = samples[index + 1] - y;
+            double dz = samples[index + 2] - z;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+
+            minX = Math.min(minX, samples[index]);
+            minY = Math.min(minY, samples[index + 1]);
+            minZ = Math.min(minZ, samples[index + 2]);
+            maxX = Math.max(maxX, samples[index]);
+            maxY = Math.max(maxY, samples[index + 1]);
+            maxZ = Math.max(maxZ, samples[index + 2]);
+        }
+
+        List<Player> players = audience.resolve(world, x, y, z, Math.sqrt(radiusSquared));
+        if (players.isEmpty()) {
+            return -1;
+        }
+
+        int drawn = 0;
+        for (Player player : players) {
+            double distanceSquared = ParticleBudget.distanceSquared(player, minX, minY, minZ, maxX, maxY, maxZ);
+
+            int stride = ParticleBudget.reserve(player, pointCount, distanceSquared);
+            if (stride == 0) {
+                continue;
+            }
+
+            for (int i = 0; i < pointCount * 3; i += 3 * stride) {
+                template.spawn(player, points[i], points[i + 1], points[i + 2]);
+                drawn++;
+            }
+        }
+        return drawn;
+    }
+
+    // fills points with the samples from oldest to newest and the points between them
+    private void interpolate() {
+        pointCount = 0;
+
+        int oldest = (head + samples.length - count * 3) % samples.length;
+        addPoint(samples[oldest], samples[oldest + 1], samples[oldest + 2]);
+
+        for (int i = 1; i < count; i++) {
+            int from = (oldest + (i - 1) * 3) % samples.length;
+            int to = (oldest + i * 3) % samples.length;
+
+            double dx = samples[to] - samples[from];
+            double dy = samples[to + 1] - samples[from + 1];
+            double dz = samples[to + 2] - samples[from + 2];
+            int segments = (int) Math.ceil(Math.sqrt(dx * dx + dy * dy + dz * dz) / spacing);
+
+            // a standing entity doesn't add the same point again
+            for (int j = 1; j <= segments; j++) {
+                double t = (double) j / segments;
+                addPoint(samples[from] + dx * t, samples[from + 1] + dy * t, samples[from + 2] + dz * t);
+            }
+        }
+    }
+
+    private void addPoint(double x, double y, double z) {
+        if ((pointCount + 1) * 3 > points.length) {
+            points = Arrays.copyOf(points, points.length * 2);
+        }
+
+        points[pointCount * 3] = x;
+        points[pointCount * 3 + 1] = y;
+        points[pointCount * 3 + 2] = z;
+        pointCount++;
+    }
+}
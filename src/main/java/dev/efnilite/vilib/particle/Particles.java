@@ -4,11 +4,11 @@ import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.util.BoundingBox;
-import org.bukkit.util.Vector;
 import org.jetbrains.annotations.NotNull;
 
 /**
- * Does particle stuff
+ * Does particle stuff.
+ * Fixed shapes are compiled once and cached using {@link ParticleShape}, lines are computed while drawing.
  *
  * @author Efnilite
  */
@@ -39,6 +39,29 @@ public class Particles {
         player.spawnParticle(data.getType(), at, data.getSize(), data.getOffsetX(), data.getOffsetY(), data.getOffsetZ(), data.getSpeed(), data.getData());
     }
 
+    /**
+     * Draws particles for every player in the audience, within the {@link ParticleBudget} of each player.
+     *
+     * @param at       The location of the particles
+     * @param data     The particle data
+     * @param audience The audience
+     */
+    public static <T> void draw(Location at, @NotNull ParticleData<T> data, @NotNull ParticleAudience audience) {
+        World world = at.getWorld();
+        if (world == null) {
+            throw new NullPointerException("World is null (Particles#draw)");
+        }
+
+        for (Player player : audience.resolve(world, at.getX(), at.getY(), at.getZ(), 0)) {
+            double distanceSquared = ParticleBudget.distanceSquared(player, at.getX(), at.getY(), at.getZ(), at.getX(), at.getY(), at.getZ());
+            if (ParticleBudget.reserve(player, 1, distanceSquared) == 0) {
+                continue;
+            }
+
+            player.spawnParticle(data.getType(), at, data.getSize(), data.getOffsetX(), data.getOffsetY(), data.getOffsetZ(), data.getSpeed(), data.getData());
+        }
+    }
+
     /**
      * Draws a particle line between 2 points
      * <p>
@@ -60,22 +83,23 @@ public class Particles {
      * @param two             The location of the entity
      * @param data            The particle data
      * @param distanceBetween The distance between particles in blocks
+     * @throws IllegalArgumentException if distanceBetween is not positive
      */
     public static <T> void line(Location one, Location two, ParticleData<T> data, double distanceBetween) {
         World world = one.getWorld();
         if (world == null) {
             throw new NullPointerException("World is null (Particles#draw)");
         }
-        double dist = one.distance(two);
-        Vector p1 = one.toVector();
-        Vector p2 = two.toVector();
-        Vector vec = p2.clone().subtract(p1).normalize().multiply(distanceBetween);
-        world.spawnParticle(data.getType(), p1.getX(), p1.getY(), p1.getZ(), data.getSize(), data.getOffsetX(), data.getOffsetY(), data.getOffsetZ(), data.getSpeed(), data.getData());
-        world.spawnParticle(data.getType(), p2.getX(), p2.getY(), p2.getZ(), data.getSize(), data.getOffsetX(), data.getOffsetY(), data.getOffsetZ(), data.getSpeed(), data.getData());
-        double length = 0;
-        for (; length < dist; p1.add(vec)) {
-            world.spawnParticle(data.getType(), p1.getX(), p1.getY(), p1.getZ(), data.getSize(), data.getOffsetX(), data.getOffsetY(), data.getOffsetZ(), data.getSpeed(), data.getData());
-            length += distanceBetween;
+
+        ParticleTemplate<T> template = data.freeze();
+        double x = one.getX(), y = one.getY(), z = one.getZ();
+        double dx = two.getX() - x, dy = two.getY() - y, dz = two.getZ() - z;
+
+        // lines between moving points rarely repeat, so they aren't cached
+        int segments = ParticleShape.segments(dx, dy, dz, distanceBetween);
+        for (int i = 0; i <= segments; i++) {
+            double t = i == 0 ? 0 : (double) i / segments;
+            template.spawn(world, x + dx * t, y + dy * t, z + dz * t);
         }
     }
 
@@ -87,42 +111,10 @@ public class Particles {
      * @param world           The world
      * @param data            The particle data
      * @param distanceBetween The distance between particles
+     * @throws IllegalArgumentException if distanceBetween is not positive
      */
     public static <T> void box(BoundingBox box, @NotNull World world, ParticleData<T> data, Player player, double distanceBetween) {
-        Location point1 = box.getMin().toLocation(world);
-        Location point2, point3, point4, point5, point6, point7, point8;
-        if (box.getWidthX() == 1 && box.getWidthZ() == 1) {
-            point2 = point1.clone().add(box.getWidthX(), 0, 0);
-            point3 = point2.clone().add(0, 0, box.getWidthZ());
-            point4 = point1.clone().add(0, 0, box.getWidthZ());
-            point5 = point1.clone().add(0, box.getHeight(), 0);
-            point6 = point2.clone().add(0, box.getHeight(), 0);
-            point7 = point3.clone().add(0, box.getHeight(), 0);
-            point8 = point4.clone().add(0, box.getHeight(), 0);
-        } else {
-            point2 = point1.clone().add(box.getWidthX() + 1, 0, 0);
-            point3 = point2.clone().add(0, 0, box.getWidthZ() + 1);
-            point4 = point1.clone().add(0, 0, box.getWidthZ() + 1);
-            point5 = point1.clone().add(0, box.getHeight() + 1, 0);
-            point6 = point2.clone().add(0, box.getHeight() + 1, 0);
-            point7 = point3.clone().add(0, box.getHeight() + 1, 0);
-            point8 = point4.clone().add(0, box.getHeight() + 1, 0);
-        }
-
-        line(point1, point2, data, player, distanceBetween);
-        line(point2, point3, data, player, distanceBetween);
-        line(point3, point4, data, player, distanceBetween);
-        line(point4, point1, data, player, distanceBetween);
-
-        line(point5, point6, data, player, distanceBetween);
-        line(point6, point7, data, player, distanceBetween);
-        line(point7, point8, data, player, distanceBetween);
-        line(point5, point8, data, player, distanceBetween);
-
-        line(point1, point5, data, player, distanceBetween);
-        line(point2, point6, data, player, distanceBetween);
-        line(point3, point7, data, player, distanceBetween);
-        line(point4, point8, data, player, distanceBetween);
+        getBoxWireframe(box, distanceBetween).getShape().draw(player, box.getMinX(), box.getMinY(), box.getMinZ(), data);
     }
 
     /**
@@ -133,41 +125,33 @@ public class Particles {
      * @param world           The world
      * @param data            The particle data
      * @param distanceBetween The distance between particles
+     * @throws IllegalArgumentException if distanceBetween is not positive
      */
     public static <T> void box(BoundingBox box, @NotNull World world, ParticleData<T> data, double distanceBetween) {
-        Location point1 = box.getMin().toLocation(world);
-        Location point2, point3, point4, point5, point6, point7, point8;
+        getBoxWireframe(box, distanceBetween).getShape().draw(world, box.getMinX(), box.getMinY(), box.getMinZ(), data);
+    }
 
+    /**
+     * Creates a box of particles, only drawing the edges which are visible from the player's side of the box.
+     * The edges at the back of the box are skipped, unless the player is inside the box.
+     *
+     * @param box             The box which the particles will go around
+     * @param data            The particle data
+     * @param player          The player
+     * @param distanceBetween The distance between particles
+     * @throws IllegalArgumentException if distanceBetween is not positive
+     */
+    public static <T> void visibleBox(BoundingBox box, ParticleData<T> data, Player player, double distanceBetween) {
+        getBoxWireframe(box, distanceBetween).drawVisible(player, box.getMinX(), box.getMinY(), box.getMinZ(), data.freeze());
+    }
+
+    // single block boxes are drawn around the block, other boxes are expanded to include the max block
+    private static Wireframe getBoxWireframe(BoundingBox box, double distanceBetween) {
         if (box.getWidthX() == 1.0 && box.getWidthZ() == 1.0) {
-            point2 = point1.clone().add(box.getWidthX(), 0.0, 0.0);
-            point3 = point2.clone().add(0.0, 0.0, box.getWidthZ());
-            point4 = point1.clone().add(0.0, 0.0, box.getWidthZ());
-            point5 = point1.clone().add(0.0, box.getHeight(), 0.0);
-            point6 = point2.clone().add(0.0, box.getHeight(), 0.0);
-            point7 = point3.clone().add(0.0, box.getHeight(), 0.0);
-            point8 = point4.clone().add(0.0, box.getHeight(), 0.0);
+            return Wireframe.box(box.getWidthX(), box.getHeight(), box.getWidthZ(), distanceBetween);
         } else {
-            point2 = point1.clone().add(box.getWidthX() + 1.0, 0.0, 0.0);
-            point3 = point2.clone().add(0.0, 0.0, box.getWidthZ() + 1.0);
-            point4 = point1.clone().add(0.0, 0.0, box.getWidthZ() + 1.0);
-            point5 = point1.clone().add(0.0, box.getHeight() + 1.0, 0.0);
-            point6 = point2.clone().add(0.0, box.getHeight() + 1.0, 0.0);
-            point7 = point3.clone().add(0.0, box.getHeight() + 1.0, 0.0);
-            point8 = point4.clone().add(0.0, box.getHeight() + 1.0, 0.0);
+            return Wireframe.box(box.getWidthX() + 1.0, box.getHeight() + 1.0, box.getWidthZ() + 1.0, distanceBetween);
         }
-
-        line(point1, point2, data, distanceBetween);
-        line(point2, point3, data, distanceBetween);
-        line(point3, point4, data, distanceBetween);
-        line(point4, point1, data, distanceBetween);
-        line(point5, point6, data, distanceBetween);
-        line(point6, point7, data, distanceBetween);
-        line(point7, point8, data, distanceBetween);
-        line(point5, point8, data, distanceBetween);
-        line(point1, point5, data, distanceBetween);
-        line(point2, point6, data, distanceBetween);
-        line(point3, point7, data, distanceBetween);
-        line(point4, point8, data, distanceBetween);
     }
 
     /**
@@ -178,16 +162,15 @@ public class Particles {
         if (world == null) {
             throw new NullPointerException("World is null (Particles#draw)");
         }
-        double dist = one.distance(two);
-        Vector p1 = one.toVector();
-        Vector p2 = two.toVector();
-        Vector vec = p2.clone().subtract(p1).normalize().multiply(distanceBetween);
-        player.spawnParticle(data.getType(), p1.getX(), p1.getY(), p1.getZ(), data.getSize(), data.getOffsetX(), data.getOffsetY(), data.getOffsetZ(), data.getSpeed(), data.getData());
-        player.spawnParticle(data.getType(), p2.getX(), p2.getY(), p2.getZ(), data.getSize(), data.getOffsetX(), data.getOffsetY(), data.getOffsetZ(), data.getSpeed(), data.getData());
-        double length = 0;
-        for (; length < dist; p1.add(vec)) {
-            player.spawnParticle(data.getType(), p1.getX(), p1.getY(), p1.getZ(), data.getSize(), data.getOffsetX(), data.getOffsetY(), data.getOffsetZ(), data.getSpeed(), data.getData());
-            length += distanceBetween;
+
+        ParticleTemplate<T> template = data.freeze();
+        double x = one.getX(), y = one.getY(), z = one.getZ();
+        double dx = two.getX() - x, dy = two.getY() - y, dz = two.getZ() - z;
+
+        int segments = ParticleShape.segments(dx, dy, dz, distanceBetween);
+        for (int i = 0; i <= segments; i++) {
+            double t = i == 0 ? 0 : (double) i / segments;
+            template.spawn(player, x + dx * t, y + dy * t, z + dz * t);
         }
     }
 
@@ -198,6 +181,7 @@ public class Particles {
      * @param data     The particle data
      * @param radius   The radius of the circle
      * @param amount   The amount of particles
+     * @throws IllegalArgumentException if amount is negative
      */
     public static <T> void circle(Location location, ParticleData<T> data, int radius, int amount) {
         World world = location.getWorld();
@@ -205,26 +189,10 @@ public class Particles {
             throw new NullPointerException("World is null (Particles#circle)");
         }
 
-        double increment = (2 * Math.PI) / amount; // calc degree per amount, 2 x pi x r = circumference
-        double y = location.getY();
-
-        for (int i = 0; i < amount; i++) {
-            double angle = i * increment;
-            double x = location.getX() + (radius * Math.cos(angle));
-            double z = location.getZ() + (radius * Math.sin(angle));
-            world.spawnParticle(data.getType(), x, y, z, data.getSize(), data.getOffsetX(), data.getOffsetY(), data.getOffsetZ(), data.getSpeed(), data.getData());
-        }
+        ParticleShape.circle(radius, amount).draw(world, location.getX(), location.getY(), location.getZ(), data);
     }
 
     public static <T> void circle(Location location, ParticleData<T> data, @NotNull Player player, int radius, int amount) {
-        double increment = (2 * Math.PI) / amount; // calc degree per amount, 2 x pi x r = circumference
-        double y = location.getY();
-
-        for (int i = 0; i < amount; i++) {
-            double angle = i * increment;
-            double x = location.getX() + (radius * Math.cos(angle));
-            double z = location.getZ() + (radius * Math.sin(angle));
-            player.spawnParticle(data.getType(), x, y, z, data.getSize(), data.getOffsetX(), data.getOffsetY(), data.getOffsetZ(), data.getSpeed(), data.getData());
-        }
+        ParticleShape.circle(radius, amount).draw(player, location.getX(), location.getY(), location.getZ(), data);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,234 @@
+package dev.efnilite.vilib.particle;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A shape made of vertices connected by edges.
+ * Every vertex is drawn exactly once, even when it's shared by multiple edges, and edges only draw the points between their vertices.
+ * When the faces of the wireframe are known, only the edges that are visible from the viewer's side can be drawn.
+ *
+ * @author Efnilite
+ */
+public final class Wireframe {
+
+    private static final Map<ParticleShape.Key, Wireframe> CACHE = ParticleShape.newCache();
+
+    /**
+     * The vertices, packed as x0, y0, z0, x1, y1, z1, ...
+     */
+    private final double[] vertices;
+
+    /**
+     * Pairs of vertex indices.
+     */
+    private final int[] edges;
+
+    /**
+     * The points between the vertices of every edge, packed like vertices.
+     */
+    private final double[][] edgePoints;
+
+    /**
+     * The planes of the faces, packed as nx, ny, nz, d where the outside of the face is n . p > d.
+     */
+    private final double[] faces;
+
+    /**
+     * Pairs of face indices per edge, which are the faces the edge borders.
+     */
+    private final int[] edgeFaces;
+
+    /**
+     * All points of this wireframe.
+     */
+    private final ParticleShape shape;
+
+    private Wireframe(double[] vertices, int[] edges, double[] faces, int[] edgeFaces, double spacing) {
+        this.vertices = vertices;
+        this.edges = edges;
+        this.faces = faces;
+        this.edgeFaces = edgeFaces;
+        this.edgePoints = new double[edges.length / 2][];
+
+        int total = vertices.length;
+        for (int edge = 0; edge < edgePoints.length; edge++) {
+            edgePoints[edge] = compileEdge(edges[edge * 2] * 3, edges[edge * 2 + 1] * 3, spacing);
+            total += edgePoints[edge].length;
+        }
+
+        double[] points = Arrays.copyOf(vertices, total);
+        int index = vertices.length;
+        for (double[] edge : edgePoints) {
+            System.arraycopy(edge, 0, points, index, edge.length);
+            index += edge.length;
+        }
+        this.shape = ParticleShape.of(points);
+    }
+
+    /**
+     * Creates a wireframe without faces, so {@link #drawVisible(Player, double, double, double, ParticleTemplate)} draws every edge.
+     * The result is not cached.
+     *
+     * @param vertices The vertices, packed as x0, y0, z0, x1, y1, z1, ...
+     * @param edges    Pairs of vertex indices which are connected.
+     * @param spacing  The max distance between points in blocks.
+     * @return the wireframe.
+     * @throws IllegalArgumentException if spacing is not positive.
+     */
+    public static Wireframe of(double @NotNull [] vertices, int @NotNull [] edges, double spacing) {
+        ParticleShape.checkSpacing(spacing);
+        return new Wireframe(vertices.clone(), edges.clone(), new double[0], new int[0], spacing);
+    }
+
+    /**
+     * The edges of a box, with the anchor as its min corner.
+     *
+     * @param widthX  The x size of the box.
+     * @param height  The y size of the box.
+     * @param widthZ  The z size of the box.
+     * @param spacing The max distance between points in blocks.
+     * @return the wireframe.
+     * @throws IllegalArgumentException if spacing is not positive.
+     */
+    public static Wireframe box(double widthX, double height, double widthZ, double spacing) {
+        ParticleShape.checkSpacing(spacing);
+        ParticleShape.Key key = new ParticleShape.Key("box", widthX, height, widthZ, spacing);
+
+        Wireframe wireframe = CACHE.get(key);
+        if (wireframe != null) {
+            return wireframe;
+        }
+
+        double[] size = {widthX, height, widthZ};
+
+        // vertex i has coordinate size[axis] on every axis where bit axis of i is set
+        double[] vertices = new double[8 * 3];
+        for (int vertex = 0; vertex < 8; vertex++) {
+            for (int axis = 0; axis < 3; axis++) {
+                vertices[vertex * 3 + axis] = ((vertex >> axis) & 1) * size[axis];
+            }
+        }
+
+        // face axis * 2 + side, where side 0 is the min face and side 1 the max face
+        double[] faces = new double[6 * 4];
+        for (int axis = 0; axis < 3; axis++) {
+            faces[axis * 8 + axis] = -1;
+            faces[axis * 8 + 4 + axis] = 1;
+            faces[axis * 8 + 7] = size[axis];
+        }
+
+        // every edge connects two vertices that differ on one axis, and borders the faces of the two other axes
+        int[] edges = new int[12 * 2];
+        int[] edgeFaces = new int[12 * 2];
+        int edge = 0;
+        for (int vertex = 0; vertex < 8; vertex++) {
+            for (int axis = 0; axis < 3; axis++) {
+                if (((vertex >> axis) & 1) == 1) {
+                    continue;
+                }
+
+                edges[edge * 2] = vertex;
+                edges[edge * 2 + 1] = vertex | (1 << axis);
+
+                int other1 = (axis + 1) % 3;
+                int other2 = (axis + 2) % 3;
+                edgeFaces[edge * 2] = other1 * 2 + ((vertex >> other1) & 1);
+                edgeFaces[edge * 2 + 1] = other2 * 2 + ((vertex >> other2) & 1);
+                edge++;
+            }
+        }
+
+        wireframe = new Wireframe(vertices, edges, faces, edgeFaces, spacing);
+        CACHE.put(key, wireframe);
+        return wireframe;
+    }
+
+    // evenly spaced points between two vertices, excluding the vertices themselves
+    private double[] compileEdge(int from, int to, double spacing) {
+        double dx = vertices[to] - vertices[from];
+        double dy = vertices[to + 1] - vertices[from + 1];
+        double dz = vertices[to + 2] - vertices[from + 2];
+        int segments = Math.max(1, (int) Math.ceil(Math.sqrt(dx * dx + dy * dy + dz * dz) / spacing));
+
+        double[] points = new double[(segments - 1) * 3];
+        for (int i = 1; i < segments; i++) {
+            double t = (double) i / segments;
+            points[(i - 1) * 3] = vertices[from] + dx * t;
+            points[(i - 1) * 3 + 1] = vertices[from + 1] + dy * t;
+            points[(i - 1) * 3 + 2] = vertices[from + 2] + dz * t;
+        }
+        return points;
+    }
+
+    /**
+     * Draws only the edges which border a face that's facing the player, including the outline.
+     * Edges on the far side of the shape are skipped. Without faces, every edge is drawn.
+     *
+     * @param player   The player.
+     * @param x        The x coordinate of the anchor.
+     * @param y        The y coordinate of the anchor.
+     * @param z        The z coordinate of the anchor.
+     * @param template The particle template.
+     */
+    public <T> void drawVisible(@NotNull Player player, double x, double y, double z, @NotNull ParticleTemplate<T> template) {
+        if (faces.length == 0) {
+            shape.draw(player, x, y, z, template);
+            return;
+        }
+
+        Location location = player.getEyeLocation();
+        double eyeX = location.getX() - x;
+        double eyeY = location.getY() - y;
+        double eyeZ = location.getZ() - z;
+
+        // inside the shape no face is facing the viewer, but every edge is in view, so draw everything
+        boolean[] visibleFaces = new boolean[faces.length / 4];
+        boolean inside = true;
+        for (int face = 0; face < visibleFaces.length; face++) {
+            visibleFaces[face] = faces[face * 4] * eyeX + faces[face * 4 + 1] * eyeY + faces[face * 4 + 2] * eyeZ > faces[face * 4 + 3];
+            inside &= !visibleFaces[face];
+        }
+        if (inside) {
+            shape.draw(player, x, y, z, template);
+            return;
+        }
+
+        boolean[] visibleEdges = new boolean[edgePoints.length];
+        boolean[] visibleVertices = new boolean[vertices.length / 3];
+        for (int edge = 0; edge < visibleEdges.length; edge++) {
+            if (visibleFaces[edgeFaces[edge * 2]] || visibleFaces[edgeFaces[edge * 2 + 1]]) {
+                visibleEdges[edge] = true;
+                visibleVertices[edges[edge * 2]] = true;
+                visibleVertices[edges[edge * 2 + 1]] = true;
+            }
+        }
+
+        for (int vertex = 0; vertex < visibleVertices.length; vertex++) {
+            if (visibleVertices[vertex]) {
+                template.spawn(player, x + vertices[vertex * 3], y + vertices[vertex * 3 + 1], z + vertices[vertex * 3 + 2]);
+            }
+        }
+        for (int edge = 0; edge < visibleEdges.length; edge++) {
+            if (!visibleEdges[edge]) {
+                continue;
+            }
+
+            double[] points = edgePoints[edge];
+            for (int i = 0; i < points.length; i += 3) {
+                template.spawn(player, x + points[i], y + points[i + 1], z + points[i + 2]);
+            }
+        }
+    }
+
+    /**
+     * @return the shape containing every vertex once and every point between them.
+     */
+    public ParticleShape getShape() {
+        return shape;
+    }
+}
@@ -0,0 +1,116 @@
+package dev.efnilite.vilib.serialization;
+
+import com.google.gson.annotations.Expose;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The difference between two snapshots of the same {@link PlayerInventory}.
+ * Only contains the slots that have changed, so it's a lot cheaper to store than a full inventory.
+ */
+public class InventoryDelta {
+
+    private final Map<Integer, ItemStack> changed = new HashMap<>();
+
+    /**
+     * Map of changed slot to the key of the new item in the {@link ItemDictionary}.
+     */
+    @Expose
+    private final Map<Integer, String> references = new HashMap<>();
+
+    /**
+     * The slots which no longer contain an item.
+     */
+    @Expose
+    private final Set<Integer> removed = new HashSet<>();
+
+    /**
+     * The generation of the full inventory this delta applies to.
+     */
+    @Expose
+    long base;
+
+    // used by gson
+    InventoryDelta() {
+
+    }
+
+    /**
+     * Creates the delta between two snapshots.
+     *
+     * @param previous The previous snapshot.
+     * @param current  The current snapshot.
+     * @return the delta which turns previous into current when applied.
+     */
+    public static InventoryDelta between(PlayerInventory previous, PlayerInventory current) {
+        InventoryDelta delta = new InventoryDelta();
+
+        current.getItems().forEach((slot, item) -> {
+            if (item != null && !item.equals(previous.get(slot))) {
+                delta.changed.put(slot, item);
+            }
+        });
+
+        for (int slot : previous.getItems().keySet()) {
+            if (current.get(slot) == null) {
+                delta.removed.add(slot);
+            }
+        }
+
+        return delta;
+    }
+
+    /**
+     * Stores every changed item in the dictionary, so this delta can be saved.
+     *
+     * @param dictionary The dictionary.
+     */
+    void intern(ItemDictionary dictionary) {
+        references.clear();
+        changed.forEach((slot, item) -> references.put(slot, dictionary.intern(item)));
+    }
+
+    /**
+     * Gets every changed item from the dictionary, after this delta has been read.
+     *
+     * @param dictionary The dictionary.
+     */
+    void resolve(ItemDictionary dictionary) {
+        changed.clear();
+        references.forEach((slot, key) -> {
+            ItemStack item = dictionary.get(key);
+            if (item != null) {
+                changed.put(slot, item);
+            }
+        });
+    }
+
+    /**
+     * Applies this delta to an inventory.
+     *
+     * @param inventory The inventory, which should be the previous snapshot this delta was made with.
+     */
+    public void apply(PlayerInventory inventory) {
+        removed.forEach(inventory::remove);
+        changed.forEach(inventory::add);
+    }
+
+    /**
+     * @return true if no slots have changed, false if not.
+     */
+    public boolean isEmpty() {
+        return changed.isEmpty() && removed.isEmpty();
+    }
+
+    public Map<Integer, ItemStack> getChanged() {
+        return changed;
+    }
+
+    public Set<Integer> getRemoved() {
+        return removed;
+    }
+}
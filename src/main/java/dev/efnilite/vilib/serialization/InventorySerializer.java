@@ -1,5 +1,8 @@
 package dev.efnilite.vilib.serialization;
 
+import org.bukkit.inventory.ItemStack;
+
+import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -17,4 +20,36 @@ public class InventorySerializer {
                 .boxed()
                 .collect(Collectors.toMap(slot -> slot, slot -> ObjectSerializer.serialize64(inventory.get(slot)), (a, b) -> b));
     }
+
+    /**
+     * Stores every item of the inventory in the dictionary.
+     *
+     * @param inventory  The inventory.
+     * @param dictionary The dictionary.
+     * @return map of slot to the key of the item in the dictionary.
+     */
+    public static Map<Integer, String> intern(PlayerInventory inventory, ItemDictionary dictionary) {
+        Map<Integer, String> references = new HashMap<>();
+        inventory.getItems().forEach((slot, item) -> references.put(slot, dictionary.intern(item)));
+        return references;
+    }
+
+    /**
+     * Gets every referenced item from the dictionary.
+     * The items in the returned inventory are the shared templates of the dictionary.
+     *
+     * @param references Map of slot to the key of the item in the dictionary.
+     * @param dictionary The dictionary.
+     * @return the inventory.
+     */
+    public static PlayerInventory resolve(Map<Integer, String> references, ItemDictionary dictionary) {
+        PlayerInventory inventory = new PlayerInventory();
+        references.forEach((slot, key) -> {
+            ItemStack item = dictionary.get(key);
+            if (item != null) {
+                inventory.add(slot, item);
+            }
+        });
+        return inventory;
+    }
 }
@@ -0,0 +1,292 @@
+package dev.efnilite.vilib.serialization;
+
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes {@link ItemStack}s.
+ * The byte buffers used while encoding and decoding are reused per thread, so only the object streams themselves are allocated per call.
+ * Failures are thrown as {@link ItemCodecException} instead of being returned as null.
+ */
+public final class ItemCodec {
+
+    /**
+     * Buffers larger than this are not kept between calls, to avoid holding on to memory after encoding a very large item.
+     */
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(Output::new);
+    private static final ThreadLocal<Input> INPUT = ThreadLocal.withInitial(Input::new);
+
+    /**
+     * The Base 64 variants which may be used to encode items.
+     */
+    public enum Variant {
+
+        /**
+         * Standard Base 64 without line-wrapping.
+         */
+        BASIC(Base64.getEncoder(), Base64.getDecoder()),
+
+        /**
+         * URL and file name safe Base 64 without line-wrapping.
+         */
+        URL_SAFE(Base64.getUrlEncoder(), Base64.getUrlDecoder()),
+
+        /**
+         * Line-wrapped Base 64. Decoding accepts both wrapped and unwrapped strings, which includes strings made by {@link ObjectSerializer}.
+         * Other characters that aren't Base 64 are rejected, unlike {@link Base64#getMimeDecoder()} which skips them.
+         */
+        MIME(Base64.getMimeEncoder(), Base64.getDecoder());
+
+        private final Base64.Encoder encoder;
+        private final Base64.Decoder decoder;
+
+        Variant(Base64.Encoder encoder, Base64.Decoder decoder) {
+            this.encoder = encoder;
+            this.decoder = decoder;
+        }
+    }
+
+    /**
+     * @param item The item.
+     * @return the encoded item.
+     * @throws ItemCodecException when the item can't be encoded.
+     */
+    public static byte[] encode(@NotNull ItemStack item) {
+        Output output = write(item);
+        byte[] bytes = output.toByteArray();
+        output.release();
+        return bytes;
+    }
+
+    /**
+     * Encodes an item into a buffer, starting at the buffer's position.
+     *
+     * @param item   The item.
+     * @param buffer The buffer.
+     * @return the amount of bytes written.
+     * @throws ItemCodecException when the item can't be encoded or doesn't fit in the buffer.
+     */
+    public static int encode(@NotNull ItemStack item, @NotNull ByteBuffer buffer) {
+        Output output = write(item);
+        int size = output.size();
+
+        try {
+            if (buffer.remaining() < size) {
+                throw new ItemCodecException("Buffer has %d bytes remaining, but item needs %d".formatted(buffer.remaining(), size));
+            }
+
+            buffer.put(output.buffer(), 0, size);
+            return size;
+        } finally {
+            output.release();
+        }
+    }
+
+    /**
+     * @param item    The item.
+     * @param variant The Base 64 variant.
+     * @return the encoded item as Base 64.
+     * @throws ItemCodecException when the item can't be encoded.
+     */
+    @NotNull
+    public static String encode64(@NotNull ItemStack item, @NotNull Variant variant) {
+        Output output = write(item);
+
+        try {
+            ByteBuffer encoded = variant.encoder.encode(ByteBuffer.wrap(output.buffer(), 0, output.size()));
+            return new String(encoded.array(), 0, encoded.limit(), StandardCharsets.ISO_8859_1);
+        } finally {
+            output.release();
+        }
+    }
+
+    /**
+     * {@link #encode64(ItemStack, Variant)} with {@link Variant#BASIC}.
+     */
+    @NotNull
+    public static String encode64(@NotNull ItemStack item) {
+        return encode64(item, Variant.BASIC);
+    }
+
+    /**
+     * @param bytes The encoded item.
+     * @return the decoded item.
+     * @throws ItemCodecException when the bytes don't contain an item.
+     */
+    @NotNull
+    public static ItemStack decode(byte[] bytes) {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes  The array containing the encoded item.
+     * @param offset The start of the encoded item.
+     * @param length The length of the encoded item.
+     * @return the decoded item.
+     * @throws ItemCodecException when the bytes don't contain an item.
+     */
+    @NotNull
+    public static ItemStack decode(byte[] bytes, int offset, int length) {
+        Object object = read(bytes, offset, length);
+
+        if (object instanceof ItemStack item) {
+            return item;
+        }
+        throw new ItemCodecException("Decoded object is not an item but %s".formatted(object == null ? "null" : object.getClass().getName()));
+    }
+
+    /**
+     * Decodes an item from the remaining bytes of a buffer. Moves the buffer's position to its limit.
+     *
+     * @param buffer The buffer.
+     * @return the decoded item.
+     * @throws ItemCodecException when the bytes don't contain an item.
+     */
+    @NotNull
+    public static ItemStack decode(@NotNull ByteBuffer buffer) {
+        int length = buffer.remaining();
+
+        if (buffer.hasArray()) {
+            ItemStack item = decode(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.limit());
+            return item;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return decode(bytes);
+    }
+
+    /**
+     * @param string  The Base 64 string.
+     * @param variant The Base 64 variant the string was encoded with.
+     * @return the decoded item.
+     * @throws ItemCodecException when the string doesn't contain an item.
+     */
+    @NotNull
+    public static ItemStack decode64(@NotNull String string, @NotNull Variant variant) {
+        byte[] bytes;
+        try {
+            bytes = variant.decoder.decode(variant == Variant.MIME ? unwrap(string) : string);
+        } catch (IllegalArgumentException ex) {
+            throw new ItemCodecException("Invalid Base 64", ex);
+        }
+
+        return decode(bytes);
+    }
+
+    /**
+     * {@link #decode64(String, Variant)} with {@link Variant#MIME}, which accepts both wrapped and unwrapped standard Base 64.
+     */
+    @NotNull
+    public static ItemStack decode64(@NotNull String string) {
+        return decode64(string, Variant.MIME);
+    }
+
+    /**
+     * Removes the line separators of line-wrapped Base 64.
+     *
+     * @param string The Base 64 string.
+     * @return the string without line separators.
+     */
+    @NotNull
+    private static String unwrap(@NotNull String string) {
+        if (string.indexOf('\n') == -1 && string.indexOf('\r') == -1) {
+            return string;
+        }
+
+        StringBuilder builder = new StringBuilder(string.length());
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c != '\n' && c != '\r') {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    // writes any object to this thread's output buffer, which must be released after use
+    static Output write(Object object) {
+        Output output = OUTPUT.get();
+        output.reset();
+
+        try (BukkitObjectOutputStream stream = new BukkitObjectOutputStream(output)) {
+            stream.writeObject(object);
+        } catch (Exception ex) {
+            output.release();
+            throw new ItemCodecException("Error while encoding %s".formatted(object), ex);
+        }
+
+        return output;
+    }
+
+    // reads any object using this thread's input buffer
+    static Object read(byte[] bytes, int offset, int length) {
+        Input input = INPUT.get();
+        input.set(bytes, offset, length);
+
+        try (BukkitObjectInputStream stream = new BukkitObjectInputStream(input)) {
+            return stream.readObject();
+        } catch (Exception ex) {
+            throw new ItemCodecException("Error while decoding item", ex);
+        } finally {
+            input.release();
+        }
+    }
+
+    /**
+     * Output stream which exposes its buffer, so it can be reused.
+     */
+    static final class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(512);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        // drops the buffer if it has grown too large to keep around
+        void release() {
+            if (buf.length > MAX_RETAINED_SIZE) {
+                buf = new byte[512];
+            }
+            reset();
+        }
+    }
+
+    /**
+     * Input stream of which the source array can be swapped, so it can be reused.
+     */
+    static final class Input extends ByteArrayInputStream {
+
+        private static final byte[] EMPTY = new byte[0];
+
+        Input() {
+            super(EMPTY);
+        }
+
+        void set(byte[] bytes, int offset, int length) {
+            this.buf = bytes;
+            this.pos = offset;
+            this.count = Math.min(offset + length, bytes.length);
+            this.mark = offset;
+        }
+
+        // avoids keeping the last decoded array reachable
+        void release() {
+            set(EMPTY, 0, 0);
+        }
+    }
+}
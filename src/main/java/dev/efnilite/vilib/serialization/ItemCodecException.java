@@ -0,0 +1,15 @@
+package dev.efnilite.vilib.serialization;
+
+/**
+ * Thrown when an item can't be encoded or decoded by {@link ItemCodec}.
+ */
+public class ItemCodecException extends RuntimeException {
+
+    public ItemCodecException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ItemCodecException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,422 @@
+package dev.efnilite.vilib.serialization;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.annotations.Expose;
+import dev.efnilite.vilib.ViMain;
+import dev.efnilite.vilib.ViPlugin;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content-addressed store for items.
+ * Every distinct item is serialized and stored once, while inventories only keep the key of the item.
+ * Items returned by this dictionary are shared templates, so they should never be modified directly.
+ * Use {@link ItemStack#clone()} before handing an item to a player.
+ * <p>
+ * New items are appended to a log next to the dictionary file, which is only folded into the dictionary file
+ * every {@link #REWRITE_INTERVAL} items or when the dictionary is {@link #compact() compacted}.
+ */
+public class ItemDictionary {
+
+    /**
+     * The name of the dictionary file, which is stored next to the inventories that use it.
+     */
+    public static final String FILE_NAME = "items.json";
+
+    /**
+     * The name of the file to which new items are appended.
+     */
+    public static final String LOG_FILE_NAME = FILE_NAME + ".log";
+
+    /**
+     * The amount of items in the log after which the dictionary file is rewritten.
+     */
+    public static final int REWRITE_INTERVAL = 1024;
+
+    private static final Map<File, ItemDictionary> DICTIONARIES = new HashMap<>();
+
+    /**
+     * Map of item key to serialized item.
+     */
+    @Expose
+    private final Map<String, String> items = new HashMap<>();
+
+    private final Map<String, ItemStack> templates = new HashMap<>();
+
+    /**
+     * The keys of the items added since the last save.
+     */
+    private final List<String> appended = new ArrayList<>();
+
+    /**
+     * The amount of items in the log file.
+     */
+    private int logged;
+
+    /**
+     * The amount of leases taken before the running compaction started.
+     */
+    private int leases;
+
+    /**
+     * The keys of the items interned while compacting, or null when not compacting.
+     */
+    private Set<String> touched;
+
+    private File file;
+
+    // used by gson
+    private ItemDictionary() {
+
+    }
+
+    /**
+     * Returns the dictionary belonging to a folder, reading it from disk if it hasn't been read yet.
+     *
+     * @param folder The folder in which the inventories are stored.
+     * @return the dictionary for this folder.
+     * @throws IOException when the dictionary can't be read.
+     */
+    public static ItemDictionary of(@NotNull File folder) throws IOException {
+        File file = new File(folder, FILE_NAME).getAbsoluteFile();
+
+        synchronized (DICTIONARIES) {
+            ItemDictionary dictionary = DICTIONARIES.get(file);
+
+            if (dictionary == null) {
+                dictionary = read(file);
+                DICTIONARIES.put(file, dictionary);
+            }
+
+            return dictionary;
+        }
+    }
+
+    private static ItemDictionary read(File file) throws IOException {
+        ItemDictionary dictionary = null;
+
+        if (file.exists()) {
+            try (FileReader reader = new FileReader(file)) {
+                dictionary = ViPlugin.getGson().fromJson(reader, ItemDictionary.class);
+            } catch (JsonParseException ex) {
+                throw new IOException("Invalid item dictionary %s".formatted(file), ex);
+            }
+        }
+
+        if (dictionary == null) {
+            dictionary = new ItemDictionary();
+        }
+
+        dictionary.file = file;
+        dictionary.readLog();
+        return dictionary;
+    }
+
+    // adds the items in the log file, skipping lines that were only partially written
+    private void readLog() throws IOException {
+        File log = getLog();
+        if (!log.exists()) {
+            return;
+        }
+
+        for (String line : Files.readAllLines(log.toPath())) {
+            int separator = line.indexOf(' ');
+            if (separator == -1) {
+                continue;
+            }
+
+            String key = line.substring(0, separator);
+            String serialized = line.substring(separator + 1);
+            if (!key.equals(hash(serialized))) {
+                continue;
+            }
+
+            items.putIfAbsent(key, serialized);
+            logged++;
+        }
+    }
+
+    /**
+     * Stores an item in this dictionary, if it isn't already stored.
+     *
+     * @param item The item.
+     * @return the key which can be used to get the item with {@link #get(String)}.
+     * @throws ItemCodecException when the item can't be encoded.
+     */
+    @NotNull
+    public String intern(@NotNull ItemStack item) {
+        String serialized = ItemCodec.encode64(item);
+        String key = hash(serialized);
+
+        synchronized (this) {
+            if (items.putIfAbsent(key, serialized) == null) {
+                appended.add(key);
+                templates.put(key, item.clone());
+            }
+
+            if (touched != null) {
+                touched.add(key);
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * Returns the shared template of the item stored under the provided key.
+     * Never modify the returned item, clone it first.
+     *
+     * @param key The key, as returned by {@link #intern(ItemStack)}.
+     * @return the item, or null if there is no item with this key.
+     */
+    @Nullable
+    public synchronized ItemStack get(@NotNull String key) {
+        ItemStack template = templates.get(key);
+        if (template != null) {
+            return template;
+        }
+
+        String serialized = items.get(key);
+        if (serialized == null) {
+            return null;
+        }
+
+        try {
+            template = ItemCodec.decode64(serialized);
+        } catch (ItemCodecException ex) {
+            ViMain.logging().stack("Error while decoding item %s".formatted(key), "delete the inventories folder and restart the server", ex);
+            return null;
+        }
+
+        templates.put(key, template);
+
+        return template;
+    }
+
+    /**
+     * Writes the items added since the last save to disk.
+     *
+     * @throws IOException when the file can't be written.
+     */
+    public synchronized void save() throws IOException {
+        if (appended.isEmpty()) {
+            return;
+        }
+
+        if (logged + appended.size() > REWRITE_INTERVAL) {
+            rewrite();
+            return;
+        }
+
+        File log = getLog();
+        File parent = log.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        // one item per line
+        try (FileWriter writer = new FileWriter(log, true)) {
+            for (String key : appended) {
+                writer.write(key);
+                writer.write(' ');
+                writer.write(items.get(key));
+                writer.write(System.lineSeparator());
+            }
+        }
+
+        logged += appended.size();
+        appended.clear();
+    }
+
+    // writes every item to the dictionary file and clears the log
+    private void rewrite() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        // write to a temporary file first to avoid losing every stored item on a partial write
+        File temp = new File(parent, FILE_NAME + ".tmp");
+        try (FileWriter writer = new FileWriter(temp)) {
+            ViPlugin.getGson().toJson(this, writer);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(getLog().toPath());
+
+        logged = 0;
+        appended.clear();
+    }
+
+    /**
+     * Removes every item that isn't referenced by any inventory in the dictionary's folder.
+     * Waits for saves that were started before, while saves started during compaction keep their items.
+     * This reads every inventory in the folder, so it should be run async.
+     *
+     * @return the amount of removed items.
+     * @throws IOException when the dictionary or an inventory can't be read or written.
+     */
+    public int compact() throws IOException {
+        synchronized (this) {
+            if (touched != null) {
+                return 0; // already compacting
+            }
+            touched = new HashSet<>();
+
+            try {
+                while (leases > 0) {
+                    wait();
+                }
+            } catch (InterruptedException ex) {
+                touched = null;
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for saves");
+            }
+        }
+
+        try {
+            Set<String> referenced = collectReferences();
+
+            synchronized (this) {
+                referenced.addAll(touched);
+
+                int size = items.size();
+                items.keySet().retainAll(referenced);
+                templates.keySet().retainAll(referenced);
+                appended.retainAll(referenced);
+
+                int removed = size - items.size();
+                if (removed > 0 || logged > 0) {
+                    rewrite();
+                }
+                return removed;
+            }
+        } finally {
+            synchronized (this) {
+                touched = null;
+            }
+        }
+    }
+
+    // returns every key referenced by an inventory or delta in the folder
+    private Set<String> collectReferences() throws IOException {
+        Set<String> referenced = new HashSet<>();
+
+        File[] files = file.getParentFile().listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException("Can't list inventories in %s".formatted(file.getParentFile()));
+        }
+
+        for (File inventory : files) {
+            String name = inventory.getName();
+            if (name.startsWith(FILE_NAME) || name.endsWith(".tmp")) {
+                continue;
+            }
+
+            if (name.endsWith(".delta")) {
+                for (String line : Files.readAllLines(inventory.toPath())) {
+                    addReferences(line, referenced);
+                }
+            } else {
+                addReferences(Files.readString(inventory.toPath()), referenced);
+            }
+        }
+
+        return referenced;
+    }
+
+    // adds the references of a json inventory or delta, ignoring anything else
+    private static void addReferences(String json, Set<String> referenced) {
+        JsonElement element;
+        try {
+            element = JsonParser.parseString(json);
+        } catch (JsonParseException ex) {
+            return;
+        }
+
+        if (!element.isJsonObject() || !(element.getAsJsonObject().get("references") instanceof JsonObject references)) {
+            return;
+        }
+
+        for (Map.Entry<String, JsonElement> entry : references.entrySet()) {
+            referenced.add(entry.getValue().getAsString());
+        }
+    }
+
+    /**
+     * Takes a lease on this dictionary while items are interned and the inventory referencing them is written,
+     * so a compaction that starts in the meantime doesn't remove the items.
+     *
+     * @return the lease, which must be closed after the inventory has been written.
+     */
+    synchronized Lease lease() {
+        if (touched != null) {
+            return () -> {}; // interned items are kept by the running compaction
+        }
+
+        leases++;
+        return () -> {
+            synchronized (this) {
+                if (--leases == 0) {
+                    notifyAll();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the amount of distinct items in this dictionary.
+     */
+    public synchronized int size() {
+        return items.size();
+    }
+
+    private File getLog() {
+        return new File(file.getParentFile(), LOG_FILE_NAME);
+    }
+
+    // returns the first 128 bits of the sha-256 hash of the serialized item as hex
+    static String hash(String serialized) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(serialized.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder builder = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                builder.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
+
+    /**
+     * A lease on a dictionary, see {@link #lease()}.
+     */
+    interface Lease extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
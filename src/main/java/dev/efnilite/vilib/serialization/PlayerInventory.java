@@ -1,9 +1,11 @@
 package dev.efnilite.vilib.serialization;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import com.google.gson.annotations.Expose;
 import dev.efnilite.vilib.ViMain;
 import dev.efnilite.vilib.ViPlugin;
-import dev.efnilite.vilib.util.Task;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
@@ -13,8 +15,16 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 /**
@@ -22,24 +32,65 @@ import java.util.function.Consumer;
  */
 public class PlayerInventory {
 
-    private final Map<Integer, ItemStack> items = new HashMap<>();
+    /**
+     * The amount of deltas saved with {@link #saveDelta(File, PlayerInventory, PlayerInventory, Runnable)}
+     * after which the full inventory is saved again, to keep reading fast.
+     */
+    public static final int REBASE_INTERVAL = 32;
+
+    /**
+     * The saved state of every file that has been read or saved, so saving a delta doesn't have to read the saved files.
+     * Only changed by operations in the {@link SaveQueue}, which run one at a time per file.
+     */
+    private static final Map<File, State> STATES = new ConcurrentHashMap<>();
 
+    private final Map<Integer, ItemStack> items;
+
+    /**
+     * Map of slot to the full serialized item. Only used by inventories saved before {@link ItemDictionary} existed.
+     */
     @Expose
     private final Map<Integer, String> serialized = new HashMap<>();
 
+    /**
+     * Map of slot to the key of the item in the {@link ItemDictionary} of the folder this inventory is saved in.
+     */
+    @Expose
+    private final Map<Integer, String> references = new HashMap<>();
+
+    /**
+     * Incremented on every full save. Deltas are only applied to the generation they were made for.
+     */
+    @Expose
+    private volatile long generation;
+
+    /**
+     * The amount of deltas saved after the full inventory of {@link #generation}, when this instance was read.
+     * Together with the generation, this is the saved state this instance is equal to. -1 if this instance wasn't read.
+     * Both are only set when this instance is created.
+     */
+    private volatile int deltas = -1;
+
     /**
      * Empty constructor to allow deserializing
      */
     public PlayerInventory() {
+        this.items = new HashMap<>();
+    }
 
+    private PlayerInventory(Map<Integer, ItemStack> items) {
+        this.items = items;
     }
 
     /**
      * Constructor. Saves the player's items.
+     * The items are not copied, so changes to the player's inventory are visible in this instance.
+     * Use {@link #snapshot(Player)} when this instance is used off the main thread.
      *
      * @param player The player
      */
     public PlayerInventory(Player player) {
+        this();
         Inventory inventory = player.getInventory();
 
         int slot = 0;
@@ -62,71 +113,307 @@ public class PlayerInventory {
     }
 
     /**
-     * Saves this instance of a PlayerInventory to a file by serializing every item using {@link InventorySerializer#serialize64(PlayerInventory)}
+     * Creates an immutable copy of the player's items, which can safely be used on any thread.
+     * Should be called on the main thread. Copying the items is cheap compared to serializing them,
+     * which is left to the async save pipeline.
+     *
+     * @param player The player
+     * @return the immutable PlayerInventory containing copies of all the player's items
+     */
+    public static PlayerInventory snapshot(Player player) {
+        Map<Integer, ItemStack> items = new HashMap<>();
+
+        ItemStack[] contents = player.getInventory().getContents();
+        for (int slot = 0; slot < contents.length; slot++) {
+            if (contents[slot] != null) {
+                items.put(slot, contents[slot].clone());
+            }
+        }
+
+        return new PlayerInventory(Collections.unmodifiableMap(items));
+    }
+
+    /**
+     * Creates an immutable copy of an inventory, which can safely be used on any thread.
+     * The copy is equal to the same saved state as the inventory, so it can be passed as previous to
+     * {@link #saveDelta(File, PlayerInventory, PlayerInventory, Runnable)}.
+     *
+     * @param inventory The inventory
+     * @return the immutable PlayerInventory containing copies of all the inventory's items
+     */
+    public static PlayerInventory snapshot(PlayerInventory inventory) {
+        Map<Integer, ItemStack> items = new HashMap<>();
+
+        inventory.items.forEach((slot, item) -> {
+            if (item != null) {
+                items.put(slot, item.clone());
+            }
+        });
+
+        PlayerInventory snapshot = new PlayerInventory(Collections.unmodifiableMap(items));
+        snapshot.generation = inventory.generation;
+        snapshot.deltas = inventory.deltas;
+        return snapshot;
+    }
+
+    /**
+     * Takes a {@link #snapshot(Player)} of the player's inventory and saves it using {@link #save(File, PlayerInventory, Runnable)}.
+     * Should be called on the main thread.
+     *
+     * @param file       The file to save it to
+     * @param player     The player
+     * @param onComplete What to do on complete. Can be null.
+     */
+    public static void save(File file, Player player, @Nullable Runnable onComplete) {
+        save(file, snapshot(player), onComplete);
+    }
+
+    /**
+     * Saves this instance of a PlayerInventory to a file.
+     * Saving happens async, with operations on the same file running in the order they were submitted.
+     * A save that hasn't started yet is skipped when a newer save to the same file is submitted, see {@link SaveQueue}.
+     * Every item is stored once in the {@link ItemDictionary} of the file's folder, the file itself only contains references.
      *
      * @param file       The file to save it to
      * @param inventory  The inventory
      * @param onComplete What to do on complete. Can be null.
      */
     public static void save(File file, PlayerInventory inventory, @Nullable Runnable onComplete) {
-        Task.create(ViMain.getPlugin()).async().execute(() -> {
+        SaveQueue.write(file, () -> {
+            File key = file.getAbsoluteFile();
+
             try {
-                if (!file.exists()) {
-                    file.createNewFile();
-                }
+                STATES.put(key, writeFull(file, inventory, getState(file)));
+                return true;
+            } catch (IOException | ItemCodecException ex) {
+                STATES.remove(key); // read again from the file on the next save
+                ViMain.logging().stack("Error while saving inventory", ex);
+                return false;
+            }
+        }, onComplete);
+    }
 
-                inventory.serialized.clear();
-                inventory.serialized.putAll(InventorySerializer.serialize64(inventory));
+    /**
+     * Saves only the slots that have changed since the previous snapshot, by appending an {@link InventoryDelta} to
+     * the delta file belonging to the file. The full inventory is saved instead using {@link #save(File, PlayerInventory, Runnable)}
+     * every {@link #REBASE_INTERVAL} deltas, when there is no saved inventory yet,
+     * or when previous is not what is currently saved in the file.
+     * The saved state of the file is kept in memory, so the file is only read when it hasn't been read or saved before.
+     *
+     * @param file       The file to save it to
+     * @param previous   The last saved snapshot, as returned by {@link #read(File, Consumer)} or as last passed as current to a save method.
+     * @param current    The current snapshot
+     * @param onComplete What to do on complete. Can be null.
+     */
+    public static void saveDelta(File file, PlayerInventory previous, PlayerInventory current, @Nullable Runnable onComplete) {
+        SaveQueue.write(file, () -> {
+            File key = file.getAbsoluteFile();
 
-                FileWriter writer = new FileWriter(file);
-                ViPlugin.getGson().toJson(inventory, writer);
+            try {
+                State state = getState(file);
 
-                if (onComplete != null) {
-                    onComplete.run();
+                // a delta is only valid when applied to the exact inventory it was made with
+                if (state == null || state.deltas >= REBASE_INTERVAL || !state.isSaved(previous)) {
+                    STATES.put(key, writeFull(file, current, state));
+                } else {
+                    STATES.put(key, writeDelta(file, InventoryDelta.between(previous, current), current, state));
                 }
+                return true;
+            } catch (IOException | ItemCodecException ex) {
+                STATES.remove(key); // read again from the file on the next save
+                ViMain.logging().stack("Error while saving inventory delta", ex);
+                return false;
+            }
+        }, onComplete);
+    }
 
-                writer.flush();
-                writer.close();
-            } catch (IOException ex) {
-                ViMain.logging().stack("Error while saving inventory", ex);
+    // writes the full inventory and removes the deltas it replaces, returns the new saved state
+    private static State writeFull(File file, PlayerInventory inventory, @Nullable State state) throws IOException {
+        ItemDictionary dictionary = ItemDictionary.of(file.getAbsoluteFile().getParentFile());
+        long generation = state == null ? 1 : state.generation + 1;
+
+        try (ItemDictionary.Lease ignored = dictionary.lease()) {
+            // the saved form is a separate instance, since the inventory may be a snapshot shared with other threads
+            PlayerInventory saved = new PlayerInventory();
+            saved.references.putAll(InventorySerializer.intern(inventory, dictionary));
+            saved.generation = generation;
+
+            // the dictionary is saved first, so references in the inventory file always resolve
+            dictionary.save();
+
+            write(file, ViPlugin.getGson().toJson(saved));
+        }
+
+        // deltas of the previous generation are ignored, even if deleting them fails
+        Files.deleteIfExists(getDeltaFile(file).toPath());
+        return new State(generation, 0, new WeakReference<>(inventory));
+    }
+
+    // appends a delta to the delta file, returns the new saved state
+    private static State writeDelta(File file, InventoryDelta delta, PlayerInventory current, State state) throws IOException {
+        if (delta.isEmpty()) {
+            return new State(state.generation, state.deltas, new WeakReference<>(current));
+        }
+
+        ItemDictionary dictionary = ItemDictionary.of(file.getAbsoluteFile().getParentFile());
+        delta.base = state.generation;
+
+        try (ItemDictionary.Lease ignored = dictionary.lease()) {
+            delta.intern(dictionary);
+            dictionary.save();
+
+            // one delta per line
+            try (FileWriter writer = new FileWriter(getDeltaFile(file), true)) {
+                writer.write(ViPlugin.getGson().toJson(delta));
+                writer.write(System.lineSeparator());
+            }
+        }
+
+        return new State(state.generation, state.deltas + 1, new WeakReference<>(current));
+    }
+
+    // writes to a temporary file first, so a partial write never replaces a saved inventory
+    private static void write(File file, String json) throws IOException {
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        Files.writeString(temp.toPath(), json);
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // returns the file in which the deltas of an inventory file are stored
+    private static File getDeltaFile(File file) {
+        return new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".delta");
+    }
+
+    // returns the saved state of a file, which is only read from the file when it isn't known yet
+    @Nullable
+    private static State getState(File file) throws IOException {
+        State state = STATES.get(file.getAbsoluteFile());
+        return state != null ? state : readState(file);
+    }
+
+    // returns the generation of the saved inventory and the amount of deltas saved since, or null if there is no saved inventory
+    @Nullable
+    private static State readState(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        long generation;
+        try {
+            JsonElement element = JsonParser.parseString(Files.readString(file.toPath()));
+            JsonElement saved = element.isJsonObject() ? element.getAsJsonObject().get("generation") : null;
+            generation = saved == null ? 0 : saved.getAsLong();
+        } catch (JsonParseException | IllegalStateException | NumberFormatException ex) {
+            return null; // the file will be replaced by a full save
+        }
+
+        int deltas = 0;
+        for (InventoryDelta delta : readDeltas(file)) {
+            if (delta.base == generation) {
+                deltas++;
             }
-        }).run();
+        }
+
+        return new State(generation, deltas, new WeakReference<>(null));
+    }
+
+    // reads every delta in the delta file, skipping lines that were only partially written
+    private static List<InventoryDelta> readDeltas(File file) throws IOException {
+        File deltas = getDeltaFile(file);
+        if (!deltas.exists()) {
+            return List.of();
+        }
+
+        List<InventoryDelta> read = new ArrayList<>();
+        for (String line : Files.readAllLines(deltas.toPath())) {
+            if (line.isBlank()) {
+                continue;
+            }
+
+            try {
+                read.add(ViPlugin.getGson().fromJson(line, InventoryDelta.class));
+            } catch (JsonParseException ignored) {
+                // partially written
+            }
+        }
+        return read;
+    }
+
+    // applies every saved delta of the inventory's generation to the inventory read from file
+    private static void replayDeltas(File file, PlayerInventory inventory) throws IOException {
+        List<InventoryDelta> deltas = readDeltas(file);
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        ItemDictionary dictionary = ItemDictionary.of(file.getAbsoluteFile().getParentFile());
+        for (InventoryDelta delta : deltas) {
+            if (delta.base != inventory.generation) {
+                continue; // left behind by a full save that couldn't delete them
+            }
+
+            delta.resolve(dictionary);
+            delta.apply(inventory);
+            inventory.deltas++;
+        }
     }
 
     /**
-     * Reads a file
+     * Reads a file. Waits for all previously submitted saves to the same file.
      *
      * @param file   The file
      * @param onRead Consumer containing the gathered PlayerInventory. Can be null.
      */
     public static void read(File file, @Nullable Consumer<@Nullable PlayerInventory> onRead) {
-        Task.create(ViMain.getPlugin()).async().execute(() -> {
+        SaveQueue.read(file, () -> {
+            File key = file.getAbsoluteFile();
+            PlayerInventory read = null;
+
             try {
-                if (!file.exists()) {
-                    if (onRead != null) {
-                        onRead.accept(null);
+                if (file.exists()) {
+                    PlayerInventory inventory;
+                    try (FileReader reader = new FileReader(file)) {
+                        inventory = ViPlugin.getGson().fromJson(reader, PlayerInventory.class);
                     }
-                    return;
-                }
-                FileReader reader = new FileReader(file);
-                PlayerInventory inventory = ViPlugin.getGson().fromJson(reader, PlayerInventory.class);
 
-                if (onRead != null) {
-                    onRead.accept(InventorySerializer.deserialize64(inventory.serialized));
-                }
+                    if (inventory != null) {
+                        if (inventory.references.isEmpty()) {
+                            read = InventorySerializer.deserialize64(inventory.serialized);
+                        } else {
+                            ItemDictionary dictionary = ItemDictionary.of(file.getAbsoluteFile().getParentFile());
+                            read = InventorySerializer.resolve(inventory.references, dictionary);
+                        }
 
-                reader.close();
-            } catch (IOException ex) {
-                ViMain.logging().stack("Error while reading inventory", ex);
-                if (onRead != null) {
-                    onRead.accept(null);
+                        read.generation = inventory.generation;
+                        read.deltas = 0;
+                        replayDeltas(file, read);
+                        // read inventories match the state by their generation and deltas, the last saved one stays valid too
+                        State state = STATES.get(key);
+                        if (state == null || state.generation != read.generation || state.deltas != read.deltas) {
+                            STATES.put(key, new State(read.generation, read.deltas, new WeakReference<>(null)));
+                        }
+                    }
                 }
+            } catch (IOException | JsonParseException ex) {
+                STATES.remove(key);
+                ViMain.logging().stack("Error while reading inventory", ex);
+                read = null;
             }
-        }).run();
+
+            if (onRead != null) {
+                onRead.accept(read);
+            }
+        });
     }
 
     /**
-     * Applies contents of this PlayerInventory to the player
+     * Applies contents of this PlayerInventory to the player.
+     * Items are cloned, since read inventories share their items with the {@link ItemDictionary}.
      *
      * @param player The player
      */
@@ -134,9 +421,11 @@ public class PlayerInventory {
         Inventory inventory = player.getInventory();
         inventory.clear();
 
-        for (int slot : items.keySet()) {
-            inventory.setItem(slot, items.get(slot));
-        }
+        items.forEach((slot, item) -> {
+            if (item != null) {
+                inventory.setItem(slot, item.clone());
+            }
+        });
     }
 
     /**
@@ -144,11 +433,32 @@ public class PlayerInventory {
      *
      * @param slot The slot
      * @param item The item
+     * @throws UnsupportedOperationException when this is a snapshot
      */
     public void add(int slot, ItemStack item) {
         items.put(slot, item);
     }
 
+    /**
+     * Removes the item in a slot
+     *
+     * @param slot The slot
+     * @throws UnsupportedOperationException when this is a snapshot
+     */
+    public void remove(int slot) {
+        items.remove(slot);
+    }
+
+    /**
+     * Creates the delta between a previous snapshot and this one.
+     *
+     * @param previous The previous snapshot
+     * @return the delta, which only contains the changed slots
+     */
+    public InventoryDelta diff(PlayerInventory previous) {
+        return InventoryDelta.between(previous, this);
+    }
+
     /**
      * Gets an item from a slot
      *
@@ -163,4 +473,13 @@ public class PlayerInventory {
     public Map<Integer, ItemStack> getItems() {
         return items;
     }
+
+    // the generation and amount of deltas saved in a file, and the inventory that was last read or saved, if it's still used
+    private record State(long generation, int deltas, WeakReference<PlayerInventory> saved) {
+
+        // whether the inventory is equal to what is saved, because it was saved last or read from or copied from a read inventory
+        private boolean isSaved(PlayerInventory inventory) {
+            return saved.get() == inventory || (inventory.generation == generation && inventory.deltas == deltas);
+        }
+    }
 }
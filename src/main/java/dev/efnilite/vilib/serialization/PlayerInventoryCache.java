@@ -0,0 +1,316 @@
+package dev.efnilite.vilib.serialization;
+
+import dev.efnilite.vilib.event.EventWatcher;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Keeps read {@link PlayerInventory}s in memory, so they don't have to be read from disk when a player joins a game.
+ * Inventories are loaded while the player is logging in, changed inventories are saved when the player quits.
+ * The size of the cache is limited by the total amount of items, after which the least recently used inventories are removed.
+ * <p>Register this cache with {@link #register()} to enable the warmup on login.</p>
+ * <p>Cached inventories are immutable snapshots, so they can be shared between threads.
+ * Changed inventories of every cache are saved when vilib is disabled.</p>
+ */
+public class PlayerInventoryCache implements EventWatcher {
+
+    private static final Set<PlayerInventoryCache> CACHES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private final Function<UUID, File> files;
+    private final int maxItems;
+
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<UUID, List<Consumer<@Nullable PlayerInventory>>> loading = new HashMap<>();
+    private final Set<UUID> cancelled = new HashSet<>(); // loads of players that quit before the load finished
+    private int items = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long loads = 0;
+    private long loadNanos = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param files    Function which returns the file in which the inventory of a player is saved.
+     * @param maxItems The max total amount of items in all cached inventories.
+     */
+    public PlayerInventoryCache(@NotNull Function<UUID, File> files, int maxItems) {
+        this.files = files;
+        this.maxItems = maxItems;
+
+        CACHES.add(this);
+    }
+
+    /**
+     * Saves every changed inventory of every cache. Called when vilib is disabled.
+     */
+    public static void flushAll() {
+        List<PlayerInventoryCache> caches;
+        synchronized (CACHES) {
+            caches = new ArrayList<>(CACHES);
+        }
+
+        caches.forEach(PlayerInventoryCache::flush);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void preLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            warm(event.getUniqueId());
+        }
+    }
+
+    @EventHandler
+    public void join(PlayerJoinEvent event) {
+        warm(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler
+    public void quit(PlayerQuitEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+
+        synchronized (this) {
+            Entry entry = entries.remove(uuid);
+            if (entry != null) {
+                items -= entry.weight;
+                writeBack(uuid, entry);
+            }
+
+            if (loading.containsKey(uuid)) {
+                cancelled.add(uuid);
+            }
+        }
+    }
+
+    /**
+     * Starts loading the inventory of a player in the background, if it isn't already cached.
+     *
+     * @param uuid The player's uuid.
+     */
+    public void warm(@NotNull UUID uuid) {
+        synchronized (this) {
+            cancelled.remove(uuid);
+
+            if (entries.containsKey(uuid) || loading.containsKey(uuid)) {
+                return;
+            }
+            loading.put(uuid, new ArrayList<>());
+        }
+
+        load(uuid);
+    }
+
+    /**
+     * Gets the inventory of a player.
+     * When the inventory is cached, the consumer is called immediately on the calling thread.
+     * If not, it's called async once the inventory has been read from disk.
+     * The returned inventory is a shared snapshot which can't be changed, use {@link #put(UUID, PlayerInventory)} to change it.
+     *
+     * @param uuid   The player's uuid.
+     * @param onRead Consumer containing the gathered PlayerInventory, or null if the player has no saved inventory.
+     */
+    public void read(@NotNull UUID uuid, @NotNull Consumer<@Nullable PlayerInventory> onRead) {
+        Entry entry;
+
+        synchronized (this) {
+            cancelled.remove(uuid);
+            entry = entries.get(uuid);
+
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+
+                List<Consumer<@Nullable PlayerInventory>> waiting = loading.get(uuid);
+                if (waiting != null) {
+                    waiting.add(onRead);
+                    return;
+                }
+
+                waiting = new ArrayList<>();
+                waiting.add(onRead);
+                loading.put(uuid, waiting);
+            }
+        }
+
+        if (entry != null) {
+            onRead.accept(entry.inventory);
+        } else {
+            load(uuid);
+        }
+    }
+
+    /**
+     * Updates the cached inventory of a player. It will be saved when the player quits.
+     * A {@link PlayerInventory#snapshot(PlayerInventory) snapshot} of the inventory is cached,
+     * so later changes to the inventory aren't saved unless it's put again.
+     *
+     * @param uuid      The player's uuid.
+     * @param inventory The inventory.
+     */
+    public void put(@NotNull UUID uuid, @NotNull PlayerInventory inventory) {
+        PlayerInventory snapshot = PlayerInventory.snapshot(inventory);
+
+        synchronized (this) {
+            store(uuid, snapshot, true);
+        }
+    }
+
+    /**
+     * Saves every changed inventory.
+     * Saving is async, use {@link SaveQueue#drain()} to wait for the saves to finish.
+     */
+    public synchronized void flush() {
+        entries.forEach(this::writeBack);
+    }
+
+    /**
+     * Removes a player's inventory from the cache, without saving it.
+     *
+     * @param uuid The player's uuid.
+     */
+    public synchronized void invalidate(@NotNull UUID uuid) {
+        Entry entry = entries.remove(uuid);
+        if (entry != null) {
+            items -= entry.weight;
+        }
+    }
+
+    private void load(UUID uuid) {
+        long start = System.nanoTime();
+
+        PlayerInventory.read(files.apply(uuid), read -> {
+            List<Consumer<@Nullable PlayerInventory>> waiting;
+            PlayerInventory inventory = read == null ? null : PlayerInventory.snapshot(read);
+
+            synchronized (this) {
+                loads++;
+                loadNanos += System.nanoTime() - start;
+
+                waiting = loading.remove(uuid);
+                // a put while loading is newer than what was on disk
+                Entry current = entries.get(uuid);
+                if (current != null) {
+                    inventory = current.inventory;
+                } else if (!cancelled.remove(uuid)) { // the player quit while loading, so it won't be used soon
+                    store(uuid, inventory, false);
+                }
+            }
+
+            if (waiting != null) {
+                for (Consumer<@Nullable PlayerInventory> consumer : waiting) {
+                    consumer.accept(inventory);
+                }
+            }
+        });
+    }
+
+    // should be called while holding the lock
+    private void store(UUID uuid, @Nullable PlayerInventory inventory, boolean dirty) {
+        Entry previous = entries.put(uuid, new Entry(inventory, dirty));
+        if (previous != null) {
+            items -= previous.weight;
+        }
+        items += entries.get(uuid).weight;
+
+        Iterator<Map.Entry<UUID, Entry>> iterator = entries.entrySet().iterator();
+        while (items > maxItems && iterator.hasNext()) {
+            Map.Entry<UUID, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(uuid)) {
+                continue;
+            }
+
+            iterator.remove();
+            items -= eldest.getValue().weight;
+            writeBack(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    // saves an entry if it has been changed
+    private void writeBack(UUID uuid, Entry entry) {
+        if (!entry.dirty || entry.inventory == null) {
+            return;
+        }
+
+        entry.dirty = false;
+        PlayerInventory.save(files.apply(uuid), entry.inventory, null);
+    }
+
+    /**
+     * @return the amount of reads which were served from memory.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the amount of reads which had to wait for the disk.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the fraction of reads which were served from memory, between 0 and 1.
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the average time it took to read an inventory from disk in ms.
+     */
+    public synchronized double getAverageLoadMillis() {
+        return loads == 0 ? 0 : loadNanos / (loads * 1_000_000D);
+    }
+
+    /**
+     * @return the amount of cached inventories.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total amount of items in all cached inventories.
+     */
+    public synchronized int getItemCount() {
+        return items;
+    }
+
+    private static final class Entry {
+
+        private final @Nullable PlayerInventory inventory;
+        private final int weight;
+        private boolean dirty;
+
+        private Entry(@Nullable PlayerInventory inventory, boolean dirty) {
+            this.inventory = inventory;
+            this.dirty = dirty;
+            // empty entries still take up some memory
+            this.weight = inventory == null ? 1 : inventory.getItems().size() + 1;
+        }
+    }
+}
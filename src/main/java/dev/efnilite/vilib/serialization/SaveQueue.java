@@ -0,0 +1,276 @@
+package dev.efnilite.vilib.serialization;
+
+import dev.efnilite.vilib.ViMain;
+import dev.efnilite.vilib.util.Task;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs inventory file operations asynchronously with a fixed amount of workers.
+ * Operations on the same file are run one by one in the order they were submitted,
+ * while a mass save only ever occupies {@link #MAX_WORKERS} threads of the async executor.
+ * <p>
+ * A write that hasn't started yet is replaced by a newer write to the same file, so at most one write per file waits
+ * between reads, no matter how often a file is saved. Reads are run before writes to other files,
+ * and one extra worker is reserved for them, so reads don't wait behind a mass save.
+ * <p>
+ * On disable, {@link #drain()} runs every waiting operation on the calling thread.
+ */
+public final class SaveQueue {
+
+    /**
+     * The max amount of async tasks writing files at the same time.
+     */
+    public static final int MAX_WORKERS = 2;
+
+    /**
+     * The amount of extra async tasks that only start for reads.
+     */
+    public static final int READ_WORKERS = 1;
+
+    private static final Map<File, Deque<Operation>> PENDING = new LinkedHashMap<>();
+    private static final Set<File> READS = new LinkedHashSet<>(); // files with a pending read
+    private static final Set<File> RUNNING = new HashSet<>();
+    private static int workers = 0;
+    private static int writers = 0;
+    private static boolean closed = false;
+
+    private SaveQueue() {
+
+    }
+
+    /**
+     * Adds a read of a file to the queue. Reads are never replaced.
+     *
+     * @param file The file the operation reads.
+     * @param read The operation.
+     */
+    static void read(File file, Runnable read) {
+        submit(file, new Operation(true, () -> {
+            read.run();
+            return true;
+        }, null));
+    }
+
+    /**
+     * Adds a write to a file to the queue. If the last operation waiting for this file is also a write,
+     * that write is replaced by this one, and its onComplete is run after this write instead.
+     *
+     * @param file       The file the operation writes.
+     * @param write      The operation, which returns true if it succeeded.
+     * @param onComplete What to do when the write succeeded. Can be null.
+     */
+    static void write(File file, BooleanSupplier write, @Nullable Runnable onComplete) {
+        submit(file, new Operation(false, write, onComplete));
+    }
+
+    private static void submit(File file, Operation operation) {
+        File key = file.getAbsoluteFile();
+        boolean inline;
+
+        synchronized (SaveQueue.class) {
+            inline = closed;
+
+            if (!inline) {
+                Deque<Operation> operations = PENDING.computeIfAbsent(key, k -> new ArrayDeque<>());
+                Operation last = operations.peekLast();
+
+                if (!operation.read && last != null && !last.read) {
+                    last.replace(operation);
+                } else {
+                    operations.add(operation);
+                }
+
+                if (operation.read) {
+                    READS.add(key);
+                }
+
+                int max = operation.read ? MAX_WORKERS + READ_WORKERS : MAX_WORKERS;
+                if (workers >= max) {
+                    return;
+                }
+                workers++;
+            }
+        }
+
+        if (inline) { // the plugin is disabling, so no tasks can be scheduled
+            operation.run(key);
+            return;
+        }
+
+        Task.create(ViMain.getPlugin()).async().execute(SaveQueue::work).run();
+    }
+
+    /**
+     * Runs every waiting operation on the calling thread and waits for running operations to finish.
+     * Operations submitted afterwards are run on the calling thread.
+     * Should be called when disabling, since no async tasks can be scheduled at that point.
+     */
+    public static void drain() {
+        synchronized (SaveQueue.class) {
+            closed = true;
+        }
+
+        while (true) {
+            File file;
+            Operation operation;
+
+            synchronized (SaveQueue.class) {
+                file = next(true);
+
+                if (file == null) {
+                    if (RUNNING.isEmpty()) {
+                        return;
+                    }
+
+                    try {
+                        SaveQueue.class.wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    continue;
+                }
+
+                operation = poll(file);
+            }
+
+            run(file, operation);
+        }
+    }
+
+    /**
+     * @return the amount of operations waiting to be run.
+     */
+    public static synchronized int size() {
+        return PENDING.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    private static void work() {
+        while (true) {
+            File file;
+            Operation operation;
+
+            synchronized (SaveQueue.class) {
+                file = next(writers < MAX_WORKERS);
+
+                if (file == null) {
+                    workers--;
+                    return;
+                }
+
+                operation = poll(file);
+                if (!operation.read) {
+                    writers++;
+                }
+            }
+
+            try {
+                run(file, operation);
+            } finally {
+                if (!operation.read) {
+                    synchronized (SaveQueue.class) {
+                        writers--;
+                    }
+                }
+            }
+        }
+    }
+
+    // returns the next file to run an operation for, preferring files that are waiting to be read. Should be called while holding the lock
+    @Nullable
+    private static File next(boolean write) {
+        for (File file : READS) {
+            // another worker is busy with this file, so the next operation has to wait to keep the order
+            if (!RUNNING.contains(file)) {
+                return file; // writes before the read are run as well, since the read waits for them
+            }
+        }
+
+        if (!write) {
+            return null;
+        }
+
+        for (File file : PENDING.keySet()) {
+            if (!RUNNING.contains(file)) {
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+    // takes the next operation of a file and marks the file as running. Should be called while holding the lock
+    private static Operation poll(File file) {
+        Deque<Operation> operations = PENDING.get(file);
+        Operation operation = operations.poll();
+
+        if (operations.isEmpty()) {
+            PENDING.remove(file);
+        }
+        if (operations.stream().noneMatch(pending -> pending.read)) {
+            READS.remove(file);
+        }
+        RUNNING.add(file);
+
+        return operation;
+    }
+
+    private static void run(File file, Operation operation) {
+        try {
+            operation.run(file);
+        } finally {
+            synchronized (SaveQueue.class) {
+                RUNNING.remove(file);
+                SaveQueue.class.notifyAll();
+            }
+        }
+    }
+
+    private static final class Operation {
+
+        private final boolean read;
+        private final List<Runnable> onComplete = new ArrayList<>(1);
+        private BooleanSupplier task;
+
+        private Operation(boolean read, BooleanSupplier task, @Nullable Runnable onComplete) {
+            this.read = read;
+            this.task = task;
+
+            if (onComplete != null) {
+                this.onComplete.add(onComplete);
+            }
+        }
+
+        // replaces the task with a newer write, which also completes the replaced write
+        private void replace(Operation newer) {
+            task = newer.task;
+            onComplete.addAll(newer.onComplete);
+        }
+
+        private void run(File file) {
+            try {
+                if (!task.getAsBoolean()) {
+                    return;
+                }
+
+                for (Runnable runnable : onComplete) {
+                    runnable.run();
+                }
+            } catch (Throwable throwable) {
+                ViMain.logging().stack("Error while running inventory operation for %s".formatted(file.getName()), throwable);
+            }
+        }
+    }
+}
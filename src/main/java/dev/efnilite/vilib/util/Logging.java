@@ -2,33 +2,179 @@ package dev.efnilite.vilib.util;
 
 import dev.efnilite.vilib.ViMain;
 import dev.efnilite.vilib.ViPlugin;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Adds useful data for later (e.g. game testing)
+ * <p>
+ * Messages are put in a ring buffer and written to the logger by a background thread which is shared by all instances,
+ * so logging never waits on the console. The thread sleeps until a message is logged, and stops when every instance is closed.
+ * Stack reports are written as one record, and identical reports
+ * within {@link #SUPPRESS_WINDOW_MS} of the first one are counted instead of written.
+ * When the buffer is full, messages are dropped and counted.
+ * <p>
+ * Messages passed as a {@link Supplier} or as a format with arguments are only built when they will be logged,
+ * so e.g. {@link #debug(Supplier)} can be used in hot paths.
+ * <p>
+ * Instances are closed automatically when their {@link ViPlugin} is disabled.
  */
-public class Logging {
+public class Logging implements AutoCloseable {
+
+    /**
+     * The amount of messages that can be waiting to be written. Must be a power of 2.
+     */
+    public static final int CAPACITY = 1024;
+
+    /**
+     * The time in ms after a stack report during which identical reports are suppressed.
+     */
+    public static final long SUPPRESS_WINDOW_MS = 60_000;
+
+    // the max time in ns the writer waits before sweeping while reports are suppressed
+    private static final long SWEEP_NS = TimeUnit.SECONDS.toNanos(1);
+
+    // all instances which haven't been closed, which are written by the shared writer thread
+    private static final Set<Logging> OPEN = new CopyOnWriteArraySet<>();
+    private static volatile Thread writer; // only changed while holding OPEN
+    private static volatile boolean waiting; // whether the writer is about to park or parked
 
     private final Logger logger;
     private final ViPlugin plugin;
 
+    private final AtomicReferenceArray<Entry> buffer = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong tail = new AtomicLong(); // next slot to claim by writers
+    private volatile long head; // next slot to write to the logger, only changed while holding the lock of this instance
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    private final Map<String, Suppression> suppressions = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+    private volatile boolean debug;
+
+    // the version information at the end of every report, which doesn't change while running
+    private volatile String environment;
+
     public Logging(ViPlugin plugin) {
         this.plugin = plugin;
         this.logger = plugin.getLogger();
+
+        synchronized (OPEN) {
+            OPEN.add(this);
+
+            if (writer == null) {
+                writer = new Thread(Logging::work, "vilib-logging");
+                writer.setDaemon(true);
+                writer.start();
+            }
+        }
+    }
+
+    /**
+     * Closes every instance that belongs to a plugin. Called when a {@link ViPlugin} is disabled.
+     *
+     * @param plugin The plugin.
+     */
+    public static void close(@NotNull Plugin plugin) {
+        for (Logging logging : OPEN) {
+            if (logging.plugin == plugin) {
+                logging.close();
+            }
+        }
+    }
+
+    /**
+     * @param debug Whether debug messages should be logged. Debug messages are logged as info.
+     */
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    /**
+     * @return true if debug messages are logged.
+     */
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public void debug(String debug) {
+        if (this.debug) {
+            log(Level.INFO, debug);
+        }
+    }
+
+    public void debug(Supplier<String> debug) {
+        if (this.debug) {
+            log(Level.INFO, debug.get());
+        }
+    }
+
+    public void debug(String format, Object... args) {
+        if (debug) {
+            log(Level.INFO, format.formatted(args));
+        }
     }
 
     public void info(String info) {
-        logger.info(info);
+        log(Level.INFO, info);
+    }
+
+    public void info(Supplier<String> info) {
+        if (logger.isLoggable(Level.INFO)) {
+            log(Level.INFO, info.get());
+        }
+    }
+
+    public void info(String format, Object... args) {
+        if (logger.isLoggable(Level.INFO)) {
+            log(Level.INFO, format.formatted(args));
+        }
     }
 
     public void warn(String warn) {
-        logger.warning(warn);
+        log(Level.WARNING, warn);
+    }
+
+    public void warn(Supplier<String> warn) {
+        if (logger.isLoggable(Level.WARNING)) {
+            log(Level.WARNING, warn.get());
+        }
+    }
+
+    public void warn(String format, Object... args) {
+        if (logger.isLoggable(Level.WARNING)) {
+            log(Level.WARNING, format.formatted(args));
+        }
     }
 
     public void error(String error) {
-        logger.severe(error);
+        log(Level.SEVERE, error);
+    }
+
+    public void error(Supplier<String> error) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            log(Level.SEVERE, error.get());
+        }
+    }
+
+    public void error(String format, Object... args) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            log(Level.SEVERE, format.formatted(args));
+        }
     }
 
     public void stack(String error, String fix) {
@@ -40,38 +186,296 @@ public class Logging {
     }
 
     public void stack(String error, @Nullable String fix, @Nullable Throwable throwable) {
-        error("##");
-        error("## %s has encountered a critical error!".formatted(plugin.getName()));
-        error("## %s".formatted(error));
-        error("##");
+        Entry entry = new Entry(Level.SEVERE, error, fix, throwable, true);
+        if (closed) { // suppressions are no longer swept
+            log(entry);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Suppression created = new Suppression(error, now);
+        Suppression[] ended = new Suppression[1];
+
+        Suppression suppression = suppressions.compute(key(error, throwable), (key, previous) -> {
+            if (previous != null && now - previous.start < SUPPRESS_WINDOW_MS) {
+                previous.count.incrementAndGet();
+                return previous;
+            }
+
+            ended[0] = previous; // window ended but hasn't been swept yet
+            return created;
+        });
+
+        if (suppression != created) {
+            return;
+        }
+
+        if (ended[0] != null && ended[0].count.get() > 0) {
+            log(new Entry(Level.SEVERE, ended[0].summary(now), null, null, false));
+        }
+        log(entry);
+    }
+
+    private void log(Level level, String message) {
+        if (logger.isLoggable(level)) {
+            log(new Entry(level, message, null, null, false));
+        }
+    }
+
+    // identical reports have the same message, exception type and origin
+    private static String key(String error, @Nullable Throwable throwable) {
+        if (throwable == null) {
+            return error;
+        }
+
+        StackTraceElement[] stack = throwable.getStackTrace();
+        return stack.length == 0
+                ? error + '\n' + throwable.getClass().getName()
+                : error + '\n' + throwable.getClass().getName() + '\n' + stack[0];
+    }
+
+    private void log(Entry entry) {
+        if (closed) {
+            write(entry);
+            return;
+        }
+
+        while (true) {
+            long slot = tail.get();
+
+            if (slot - head >= CAPACITY) {
+                dropped.incrementAndGet();
+                wake();
+                return;
+            }
+
+            if (tail.compareAndSet(slot, slot + 1)) {
+                buffer.set((int) (slot & (CAPACITY - 1)), entry);
+                wake();
+                return;
+            }
+        }
+    }
+
+    // only unparks the writer when it's waiting, so logging while the writer is busy costs no system call
+    private static void wake() {
+        if (waiting) {
+            Thread thread = writer;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    private static void work() {
+        long lastSweep = System.nanoTime();
+
+        while (true) {
+            synchronized (OPEN) {
+                if (OPEN.isEmpty()) { // stop, so no closed plugin is referenced
+                    writer = null;
+                    return;
+                }
+            }
+
+            boolean suppressing = false;
+            long now = System.nanoTime();
+            boolean sweep = now - lastSweep >= SWEEP_NS;
+
+            for (Logging logging : OPEN) {
+                synchronized (logging) {
+                    if (logging.closed) {
+                        continue;
+                    }
+
+                    logging.drain();
+                    if (sweep) {
+                        logging.sweep(System.currentTimeMillis(), false);
+                    }
+                }
+                suppressing |= !logging.suppressions.isEmpty();
+            }
+            if (sweep) {
+                lastSweep = now;
+            }
+
+            // messages published after setting waiting always unpark this thread
+            waiting = true;
+            if (!hasWork()) {
+                if (suppressing) {
+                    LockSupport.parkNanos(Logging.class, SWEEP_NS);
+                } else {
+                    LockSupport.park(Logging.class);
+                }
+            }
+            waiting = false;
+        }
+    }
+
+    private static boolean hasWork() {
+        if (OPEN.isEmpty()) { // the writer should stop
+            return true;
+        }
+
+        for (Logging logging : OPEN) {
+            if (logging.closed) { // written by close()
+                continue;
+            }
+
+            if (logging.dropped.get() > 0
+                    || logging.buffer.get((int) (logging.head & (CAPACITY - 1))) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // writes all published messages in order
+    private void drain() {
+        long next = head;
+
+        while (true) {
+            int index = (int) (next & (CAPACITY - 1));
+            Entry entry = buffer.get(index);
+
+            if (entry == null) { // not published yet, or empty
+                break;
+            }
+
+            buffer.lazySet(index, null);
+            head = ++next;
+            write(entry);
+        }
+
+        int lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            logger.warning("Dropped %d log messages because the log buffer was full".formatted(lost));
+        }
+    }
+
+    // reports the amount of suppressed reports for every window that ended
+    private void sweep(long now, boolean all) {
+        for (String key : suppressions.keySet()) {
+            // removed in compute, so no report can be counted after its count is read
+            suppressions.computeIfPresent(key, (k, suppression) -> {
+                if (!all && now - suppression.start < SUPPRESS_WINDOW_MS) {
+                    return suppression;
+                }
+
+                if (suppression.count.get() > 0) {
+                    logger.severe(suppression.summary(now));
+                }
+                return null;
+            });
+        }
+    }
+
+    private void write(Entry entry) {
+        try {
+            if (entry.report) {
+                logger.log(entry.level, report(entry.message, entry.fix, entry.throwable));
+            } else {
+                logger.log(entry.level, entry.message);
+            }
+        } catch (Exception ex) {
+            logger.log(entry.level, entry.message, entry.throwable);
+        }
+    }
+
+    private String report(String error, @Nullable String fix, @Nullable Throwable throwable) {
+        StringBuilder report = new StringBuilder();
+
+        report.append("\n##");
+        report.append("\n## %s has encountered a critical error!".formatted(plugin.getName()));
+        report.append("\n## %s".formatted(error));
+        report.append("\n##");
 
         if (throwable == null) {
-            error("## No stack trace provided");
+            report.append("\n## No stack trace provided");
         } else {
-            error("## Stack trace:");
-            error("## %s".formatted(throwable));
+            report.append("\n## Stack trace:");
+            report.append("\n## %s".formatted(throwable));
             StackTraceElement[] stack = throwable.getStackTrace();
             for (StackTraceElement stackTraceElement : stack) {
-                error("##\t" + stackTraceElement.toString());
+                report.append("\n##\t").append(stackTraceElement);
             }
         }
 
-        error("##");
+        report.append("\n##");
         if (fix == null) {
-            error("## This is probably not your fault.");
-            error("## Contact the developer to fix it.");
-            error("## Be sure to send the entire error while reporting.");
+            report.append("\n## This is probably not your fault.");
+            report.append("\n## Contact the developer to fix it.");
+            report.append("\n## Be sure to send the entire error while reporting.");
         } else {
-            error("## This is probably not your fault, but you may be able to fix it.");
-            error("## You should try: %s".formatted(fix));
-            error("## Contact the developer if this doesn't work.");
-            error("## Be sure to send the entire error while reporting.");
-        }
-        error("##");
-        error("## Version information:");
-        error("##\tPlugin Version: %s".formatted(plugin.getDescription().getVersion()));
-        error("##\tvilib Version: %s".formatted(ViMain.getPlugin().getDescription().getVersion()));
-        error("##\tMinecraft: %s".formatted(Version.getVersion().name().replaceAll("_", ".")));
-        error("##");
+            report.append("\n## This is probably not your fault, but you may be able to fix it.");
+            report.append("\n## You should try: %s".formatted(fix));
+            report.append("\n## Contact the developer if this doesn't work.");
+            report.append("\n## Be sure to send the entire error while reporting.");
+        }
+        report.append("\n##");
+        report.append(getEnvironment());
+
+        return report.toString();
+    }
+
+    // built once, building it twice at the same time gives the same result
+    private String getEnvironment() {
+        if (environment == null) {
+            environment = "\n## Version information:" +
+                    "\n##\tPlugin Version: %s".formatted(plugin.getDescription().getVersion()) +
+                    "\n##\tvilib Version: %s".formatted(ViMain.getPlugin().getDescription().getVersion()) +
+                    "\n##\tMinecraft: %s".formatted(Version.getVersion().name().replaceAll("_", ".")) +
+                    "\n##";
+        }
+
+        return environment;
+    }
+
+    /**
+     * Writes all waiting messages and suppressed counts, after which this instance is no longer written by the background thread.
+     * Messages logged after closing are written directly on the calling thread.
+     * Called automatically when the plugin is disabled.
+     */
+    @Override
+    public void close() {
+        synchronized (this) { // the writer thread never drains this instance at the same time
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            // writers that claimed a slot before closing may still be publishing
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            do {
+                drain();
+                Thread.onSpinWait();
+            } while (head < tail.get() && System.nanoTime() < end);
+
+            sweep(System.currentTimeMillis(), true);
+        }
+
+        synchronized (OPEN) {
+            OPEN.remove(this);
+        }
+        wake(); // lets the writer stop when this was the last instance
+    }
+
+    private record Entry(Level level, String message, @Nullable String fix, @Nullable Throwable throwable, boolean report) {
+    }
+
+    private static final class Suppression {
+
+        private final String error;
+        private final long start;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private Suppression(String error, long start) {
+            this.error = error;
+            this.start = start;
+        }
+
+        private String summary(long now) {
+            return "Suppressed %d identical errors in last %ds: %s".formatted(count.get(), (now - start) / 1000, error);
+        }
     }
 }
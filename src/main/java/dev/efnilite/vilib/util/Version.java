@@ -44,10 +44,15 @@ public enum Version {
 
     /**
      * Returns the current version as an instance of this enum.
+     * The version is only read from the server once.
      *
      * @return the version.
      */
     public static Version getVersion() {
+        if (VERSION != null) {
+            return VERSION;
+        }
+
         String string = getInternalVersion().substring(0, 5).toUpperCase();
         string = string.endsWith("_") ? string.substring(0, string.length() - 1) : string;
         VERSION = valueOf(string);
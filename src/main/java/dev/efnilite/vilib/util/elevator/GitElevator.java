@@ -1,90 +1,521 @@
 package dev.efnilite.vilib.util.elevator;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import dev.efnilite.vilib.ViPlugin;
 import dev.efnilite.vilib.util.Task;
 import dev.efnilite.vilib.util.Time;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.lang.reflect.Method;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Elevator class to automatically check for and update plugins.
  * Used for open-source plugins, specifically hosted on GitHub.
  * Lowers the barrier of downloading a new version, which is useful for improving "updatedness" retention.
+ * <p>
+ * Checks are conditional requests: the ETag of the last response is stored in the plugin folder,
+ * so unchanged releases are answered with 304 Not Modified. Failed checks are retried with exponential backoff.
  */
 public class GitElevator {
 
-    private boolean outdated;
-    private String downloadUrl;
+    /**
+     * The interval between update checks. By default 8 hours.
+     */
+    public static final int CHECK_INTERVAL = Time.SECONDS_PER_HOUR * 8 * 20;
+
+    /**
+     * The GitHub API used when no other API url is specified.
+     */
+    public static final String DEFAULT_API_URL = "https://api.github.com";
+
+    /**
+     * The max time to connect to the API.
+     */
+    public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * The max time to wait for a response after connecting.
+     */
+    public static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(20);
+
+    /**
+     * The delay before retrying after the first failed check, which doubles after every failure up to {@link #CHECK_INTERVAL}.
+     */
+    public static final long MIN_BACKOFF_MS = 60_000;
+
+    /**
+     * The name of the file in the plugin folder where the result of the last check is stored.
+     */
+    public static final String CACHE_FILE = ".elevator.json";
+
+    /**
+     * The name of the folder in the plugin folder where new versions are downloaded to before they replace the jar.
+     */
+    public static final String STAGING_FOLDER = ".elevator";
+
+    /**
+     * The max time to download a new version.
+     */
+    public static final Duration DOWNLOAD_TIMEOUT = Duration.ofMinutes(10);
+
+    /**
+     * The amount of bytes transferred at once while downloading, after which the progress is updated.
+     */
+    private static final long CHUNK_SIZE = 256 * 1024;
+
+    private static final Executor DOWNLOADS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "vilib-elevator-download");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static final HttpClient HTTP = HttpClient.newBuilder()
+            .connectTimeout(CONNECT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    private volatile boolean outdated;
+    private volatile String downloadUrl;
+    private volatile String latestVersion;
+    private volatile String assetDigest;
+    private volatile long assetSize = -1;
+    private String etag;
+    private int failures;
+    private volatile long nextCheck;
+
     private final VersionComparator comparator;
     private final String repo;
     private final ViPlugin plugin;
     private final boolean downloadIfOutdated;
+    private final String apiUrl;
+    private final File cache;
+
+    private volatile File staged;
+    private volatile double progress;
+    private CompletableFuture<File> download;
+    private File downloading;
+    private volatile boolean cancelled;
+    private volatile InputStream body; // the response body of the running download
 
     /**
-     * The interval between update checks. By default 8 hours.
+     * Constructor of this Elevator.
+     *
+     * @param plugin             The plugin. Used to get the current version.
+     * @param comparator         The comparator type used for version checking.
+     * @param repo               The repo name including the author, e.g. Efnilite/vilib
+     * @param downloadIfOutdated Whether the Elevator should download a new version if the current is outdated.
      */
-    public static final int CHECK_INTERVAL = Time.SECONDS_PER_HOUR * 8 * 20;
+    public GitElevator(String repo, ViPlugin plugin, VersionComparator comparator, boolean downloadIfOutdated) {
+        this(repo, plugin, comparator, downloadIfOutdated, DEFAULT_API_URL);
+    }
 
     /**
-     * Constructor of this Elevator. Automatically checks for updates on creation.
+     * Constructor of this Elevator.
      *
      * @param plugin             The plugin. Used to get the current version.
      * @param comparator         The comparator type used for version checking.
      * @param repo               The repo name including the author, e.g. Efnilite/vilib
      * @param downloadIfOutdated Whether the Elevator should download a new version if the current is outdated.
+     * @param apiUrl             The url of the GitHub API, or of a server that mirrors it, e.g. https://api.github.com
      */
-    public GitElevator(String repo, ViPlugin plugin, VersionComparator comparator, boolean downloadIfOutdated) {
+    public GitElevator(String repo, ViPlugin plugin, VersionComparator comparator, boolean downloadIfOutdated, @NotNull String apiUrl) {
         this.plugin = plugin;
         this.repo = repo;
         this.comparator = comparator;
         this.downloadIfOutdated = downloadIfOutdated;
+        this.apiUrl = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+        this.cache = new File(plugin.getDataFolder(), CACHE_FILE);
+
+        readCache();
     }
 
     /**
-     * Checks if this plugin version is outdated.
+     * Checks if this plugin version is outdated. Blocks until the check is done or has timed out.
      */
-    @SuppressWarnings("deprecation") // <1.13
     public void check() {
+        checkAsync().join();
+    }
+
+    /**
+     * Checks if this plugin version is outdated without blocking. The returned future never completes exceptionally.
+     *
+     * @return a future that completes when the check is done.
+     */
+    public CompletableFuture<Void> checkAsync() {
+        HttpRequest request;
+        synchronized (this) {
+            try {
+                HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("%s/repos/%s/releases/latest".formatted(apiUrl, repo)))
+                        .timeout(REQUEST_TIMEOUT)
+                        .header("Accept", "application/vnd.github+json")
+                        .header("User-Agent", plugin.getName());
+
+                if (etag != null && latestVersion != null) {
+                    builder.header("If-None-Match", etag);
+                }
+
+                request = builder.build();
+            } catch (IllegalArgumentException ex) {
+                fail(0, ex);
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+
+        return HTTP.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenAccept(this::handle)
+                .exceptionally(ex -> {
+                    fail(0, ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                    return null;
+                });
+    }
+
+    private synchronized void handle(HttpResponse<String> response) {
+        switch (response.statusCode()) {
+            case 200 -> {
+                JsonObject object = JsonParser.parseString(response.body()).getAsJsonObject();
+
+                latestVersion = object.get("tag_name").getAsString();
+                JsonObject asset = object.getAsJsonArray("assets").get(0).getAsJsonObject(); // for some reason assets is an array with one element
+                downloadUrl = asset.get("browser_download_url").getAsString();
+                assetDigest = getString(asset, "digest");
+                assetSize = asset.has("size") ? asset.get("size").getAsLong() : -1;
+                etag = response.headers().firstValue("ETag").orElse(null);
+
+                writeCache();
+                succeed();
+            }
+            case 304 -> succeed();
+            case 403, 429 -> fail(getRetryAfter(response), new IOException("Rate limited by %s (%d)".formatted(apiUrl, response.statusCode())));
+            default -> fail(0, new IOException("Unexpected response from %s (%d)".formatted(apiUrl, response.statusCode())));
+        }
+    }
+
+    private void succeed() {
+        failures = 0;
+        nextCheck = System.currentTimeMillis() + CHECK_INTERVAL / 20 * 1000L;
+        outdated = !comparator.isLatest(latestVersion, plugin.getDescription().getVersion());
+
+        if (outdated) {
+            plugin.getLogger().info("A new version of %s is available!".formatted(plugin.getName()));
+            if (downloadIfOutdated) {
+                plugin.getLogger().info("Restarting the server will apply the changes.");
+                stage();
+            } else {
+                plugin.getLogger().info("Please update to the latest version!");
+            }
+        } else {
+            clearStaging();
+        }
+    }
+
+    // schedules the next check with exponential backoff, or at the time the server asked for
+    private synchronized void fail(long retryAfterMs, Throwable cause) {
+        failures++;
+
+        long backoff = Math.min(CHECK_INTERVAL / 20 * 1000L, MIN_BACKOFF_MS << Math.min(failures - 1, 20));
+        nextCheck = System.currentTimeMillis() + Math.max(backoff, retryAfterMs);
+
+        plugin.getLogger().severe("There was an error while checking the latest version, retrying in %d minutes: %s"
+                .formatted((nextCheck - System.currentTimeMillis()) / 60_000, cause.getMessage()));
+    }
+
+    // the delay the API asked for in the Retry-After or X-RateLimit-Reset header, or 0 if there is none
+    private long getRetryAfter(HttpResponse<?> response) {
+        try {
+            var retryAfter = response.headers().firstValue("Retry-After");
+            if (retryAfter.isPresent()) {
+                return Long.parseLong(retryAfter.get().trim()) * 1000;
+            }
+
+            var reset = response.headers().firstValue("X-RateLimit-Reset");
+            if (reset.isPresent()) {
+                return Math.max(0, Long.parseLong(reset.get().trim()) * 1000 - System.currentTimeMillis());
+            }
+        } catch (NumberFormatException ignored) {
+            // invalid header
+        }
+
+        return 0;
+    }
+
+    private void readCache() {
+        if (!cache.exists()) {
+            return;
+        }
+
+        try (Reader reader = Files.newBufferedReader(cache.toPath(), StandardCharsets.UTF_8)) {
+            JsonObject object = JsonParser.parseReader(reader).getAsJsonObject();
+
+            if (!repo.equals(getString(object, "repo")) || !apiUrl.equals(getString(object, "api"))) {
+                return;
+            }
+
+            etag = getString(object, "etag");
+            latestVersion = getString(object, "version");
+            downloadUrl = getString(object, "download");
+            assetDigest = getString(object, "digest");
+            assetSize = object.has("size") ? object.get("size").getAsLong() : -1;
+        } catch (Exception ex) {
+            plugin.getLogger().warning("Failed to read %s, checking without cache: %s".formatted(CACHE_FILE, ex.getMessage()));
+        }
+    }
+
+    @Nullable
+    private static String getString(JsonObject object, String key) {
+        JsonElement element = object.get(key);
+
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private void writeCache() {
+        JsonObject object = new JsonObject();
+        object.addProperty("repo", repo);
+        object.addProperty("api", apiUrl);
+        object.addProperty("etag", etag);
+        object.addProperty("version", latestVersion);
+        object.addProperty("download", downloadUrl);
+        object.addProperty("digest", assetDigest);
+        object.addProperty("size", assetSize);
+
         try {
-            String url = "https://api.github.com/repos/%s/releases/latest".formatted(repo);
+            File temp = new File(cache.getParentFile(), CACHE_FILE + ".tmp");
+            cache.getParentFile().mkdirs();
 
-            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-            connection.setRequestProperty("accept", "application/json");
+            Files.writeString(temp.toPath(), object.toString(), StandardCharsets.UTF_8);
+            Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Failed to write %s: %s".formatted(CACHE_FILE, ex.getMessage()));
+        }
+    }
 
-            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+    /**
+     * Downloads the latest version in the background to the staging folder, unless it's already downloaded or downloading.
+     * The download is verified using the digest of the release asset, or its size if there is no digest,
+     * and only moved to its final name in the staging folder once it's complete.
+     *
+     * @return a future that completes with the verified file.
+     */
+    public synchronized CompletableFuture<File> stage() {
+        String version = latestVersion;
+        String url = downloadUrl;
+        String digest = assetDigest;
+        long size = assetSize;
 
-            JsonObject object = new JsonParser().parse(reader).getAsJsonObject();
-            String newerVersion = object.get("tag_name").getAsString();
-            downloadUrl = object.getAsJsonArray("assets").get(0) // for some reason assets is an array with one element
-                    .getAsJsonObject().get("browser_download_url").getAsString(); // get browser_download_url
+        if (version == null || url == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("No version to download"));
+        }
 
-            reader.close();
+        File target = new File(new File(plugin.getDataFolder(), STAGING_FOLDER), version.replaceAll("[^A-Za-z0-9._-]", "_") + ".jar");
+        if (download != null && target.equals(downloading) && !download.isCompletedExceptionally()) {
+            return download; // already downloading or downloaded this version
+        }
 
-            outdated = !comparator.isLatest(newerVersion, plugin.getDescription().getVersion());
+        staged = null;
+        downloading = target;
+        progress = 0;
+        cancelled = false;
+        download = CompletableFuture.supplyAsync(() -> {
+            try {
+                if (target.exists() && verify(target.toPath(), digest, size)) {
+                    return target;
+                }
 
-            if (outdated) {
-                plugin.getLogger().info("A new version of is available!");
-                if (downloadIfOutdated) {
-                    plugin.getLogger().info("Restarting the server will apply the changes.");
-                } else {
-                    plugin.getLogger().info("Please update to the latest version!");
+                return download(url, target, digest, size);
+            } catch (IOException | NoSuchAlgorithmException ex) {
+                throw new CompletionException(ex);
+            }
+        }, DOWNLOADS).whenComplete((file, ex) -> {
+            if (ex != null && cancelled) {
+                plugin.getLogger().info("Cancelled the download of version %s of %s".formatted(version, plugin.getName()));
+            } else if (ex != null) {
+                plugin.getLogger().severe("There was an error while downloading the latest version: " + ex.getMessage());
+            } else {
+                staged = file;
+                progress = 1;
+                plugin.getLogger().info("Version %s of %s has been downloaded and will be applied on restart.".formatted(version, plugin.getName()));
+            }
+        });
+
+        return download;
+    }
+
+    private File download(String url, File target, String digest, long size) throws IOException, NoSuchAlgorithmException {
+        File part = new File(target.getParentFile(), target.getName() + ".part");
+        target.getParentFile().mkdirs();
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(DOWNLOAD_TIMEOUT)
+                .header("Accept", "application/octet-stream")
+                .header("User-Agent", plugin.getName())
+                .build();
+
+        HttpResponse<InputStream> response;
+        try {
+            response = HTTP.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download was interrupted");
+        }
+
+        body = response.body();
+        if (cancelled) { // cancelled while connecting
+            body.close();
+            throw new InterruptedIOException("Download was cancelled");
+        }
+
+        if (response.statusCode() != 200) {
+            body.close();
+            throw new IOException("Unexpected response from %s (%d)".formatted(url, response.statusCode()));
+        }
+
+        long total = size >= 0 ? size : response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        long position = 0;
+
+        try (ReadableByteChannel in = Channels.newChannel(new DigestInputStream(response.body(), sha));
+             FileChannel out = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long transferred;
+            int logged = 0;
+            while ((transferred = out.transferFrom(in, position, CHUNK_SIZE)) > 0) {
+                if (cancelled) {
+                    throw new InterruptedIOException("Download was cancelled");
+                }
+                position += transferred;
+
+                if (total > 0) {
+                    progress = Math.min(0.99, (double) position / total);
+
+                    if ((int) (progress * 4) > logged) { // log every 25%
+                        logged = (int) (progress * 4);
+                        plugin.getLogger().info("Downloading %s: %d%%".formatted(plugin.getName(), logged * 25));
+                    }
                 }
             }
-        } catch (Throwable throwable) {
-            plugin.getLogger().severe("There was an error while checking the latest version");
+
+            out.force(true);
+        } catch (IOException ex) {
+            Files.deleteIfExists(part.toPath());
+            throw cancelled ? new InterruptedIOException("Download was cancelled") : ex;
+        } finally {
+            body = null;
+        }
+
+        if (!matches(HexFormat.of().formatHex(sha.digest()), position, digest, size)) {
+            Files.deleteIfExists(part.toPath());
+            throw new IOException("Downloaded file doesn't match the release (%s, %d bytes)".formatted(digest, size));
+        }
+
+        move(part, target);
+        return target;
+    }
+
+    // whether an existing file matches the release
+    private static boolean verify(Path file, String digest, long size) throws IOException, NoSuchAlgorithmException {
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        long length = 0;
+
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), sha)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                length += read;
+            }
+        }
+
+        return matches(HexFormat.of().formatHex(sha.digest()), length, digest, size);
+    }
+
+    // compares against the digest if there is one, which GitHub provides as "sha256:<hex>", or else against the size
+    private static boolean matches(String sha256, long length, String digest, long size) {
+        if (digest != null && digest.startsWith("sha256:")) {
+            return digest.substring("sha256:".length()).equalsIgnoreCase(sha256);
+        }
+
+        return size < 0 || size == length;
+    }
+
+    private static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
     /**
-     * Elevates the current plugin build.
+     * Stops the download started by {@link #stage()}, if it's still running. The partially downloaded file is removed.
+     * Called when the plugin is disabled, since downloads run on threads that outlive the plugin.
+     */
+    public void cancelDownload() {
+        synchronized (this) {
+            if (download == null || download.isDone()) {
+                return;
+            }
+            cancelled = true;
+        }
+
+        // closing the body stops a transfer that is blocked on reading
+        InputStream body = this.body;
+        if (body != null) {
+            try {
+                body.close();
+            } catch (IOException ignored) {
+                // the download fails either way
+            }
+        }
+    }
+
+    // removes downloads of versions that are no longer newer than the current version
+    private synchronized void clearStaging() {
+        if (download != null && !download.isDone()) {
+            return;
+        }
+
+        File[] files = new File(plugin.getDataFolder(), STAGING_FOLDER).listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (!file.delete()) {
+                plugin.getLogger().warning("Failed to delete old download %s".formatted(file.getName()));
+            }
+        }
+        staged = null;
+        download = null;
+        downloading = null;
+    }
+
+    /**
+     * Elevates the current plugin build by replacing the jar with the version downloaded by {@link #stage()}.
+     * This never downloads, so it's safe to use on disable. If the download hasn't finished, nothing is replaced.
      * Warning: using this on start-up will result in many errors in class-loading semantics, etc.
      * Advised to be used on disable.
      *
@@ -103,25 +534,23 @@ public class GitElevator {
             if (!outdated) {
                 return;
             }
+
+            File file = staged;
+            if (file == null || !file.exists()) {
+                plugin.getLogger().info("The latest version of " + plugin.getName() + " hasn't been downloaded yet, it will be applied on a later restart.");
+                return;
+            }
+
             File jar = getJar();
             if (jar == null) {
                 return;
             }
 
-            InputStream stream = new URL(downloadUrl).openStream();
-            ReadableByteChannel channel = Channels.newChannel(stream);
-            FileOutputStream output = new FileOutputStream(jar);
-
-            output.getChannel().transferFrom(channel, 0, Long.MAX_VALUE);
-
-            channel.close();
-            output.flush();
-            output.close();
-            stream.close();
-
+            move(file, jar);
+            staged = null;
             outdated = false;
 
-            plugin.getLogger().info("A new version of " + plugin.getName() + " has been downloaded.");
+            plugin.getLogger().info("A new version of " + plugin.getName() + " has been installed.");
         } catch (Throwable throwable) {
             throwable.printStackTrace();
             plugin.getLogger().severe("There was an error while updating to the latest version");
@@ -139,6 +568,36 @@ public class GitElevator {
         }
     }
 
+    /**
+     * @return true if the next check is due, which is immediately after creation and later depends on the result of the last check.
+     */
+    public boolean isDue() {
+        return System.currentTimeMillis() >= nextCheck;
+    }
+
+    /**
+     * @return the latest version as of the last check, or null if it's unknown.
+     */
+    @Nullable
+    public String getLatestVersion() {
+        return latestVersion;
+    }
+
+    /**
+     * @return the progress of the download of the latest version, from 0 to 1.
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return true if the latest version has been downloaded and verified, and will replace the jar on {@link #elevate(boolean)}.
+     */
+    public boolean isStaged() {
+        File file = staged;
+        return file != null && file.exists();
+    }
+
     public boolean isOutdated() {
         return outdated;
     }
@@ -0,0 +1,274 @@
+package dev.efnilite.vilib.util.elevator;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A parsed semantic version, e.g. <code>v1.10.0-beta.2+build.5</code>.
+ * Versions are ordered as described by <a href="https://semver.org">semver</a>: numerically by their numbers,
+ * a pre-release is lower than the same version without one, and build metadata is ignored.
+ * Versions with less or more than three numbers are allowed, missing numbers count as 0.
+ * <p>
+ * Parsed versions are cached per string, so comparing the same versions again doesn't allocate.
+ */
+public final class SemanticVersion implements Comparable<SemanticVersion> {
+
+    /**
+     * The max amount of cached versions. When this is exceeded, the cache is cleared.
+     */
+    private static final int CACHE_SIZE = 256;
+
+    private static final Map<String, SemanticVersion> CACHE = new ConcurrentHashMap<>();
+
+    // cached in place of versions that can't be parsed
+    private static final SemanticVersion INVALID = new SemanticVersion(new int[0], -1, null);
+
+    // bits per number in the packed key
+    private static final int BITS = 20;
+    private static final int MAX = (1 << BITS) - 1;
+
+    /**
+     * The numbers of this version, e.g. [1, 10, 0].
+     */
+    private final int[] numbers;
+
+    /**
+     * Major, minor and patch packed into one long, followed by a bit that is set when there is no pre-release.
+     * -1 if any of the numbers doesn't fit, or if there are more than three numbers.
+     */
+    private final long key;
+
+    /**
+     * The dot-separated pre-release identifiers, or null if this is not a pre-release.
+     */
+    private final String[] preRelease;
+
+    private SemanticVersion(int[] numbers, long key, String[] preRelease) {
+        this.numbers = numbers;
+        this.key = key;
+        this.preRelease = preRelease;
+    }
+
+    /**
+     * Parses a version, or returns the cached result of parsing the same string before.
+     *
+     * @param version The version, e.g. 1.10.0, v2.0.0-rc.1 or 3.1+build.7
+     * @return the parsed version.
+     * @throws IllegalArgumentException if the version isn't a semantic version.
+     */
+    @NotNull
+    public static SemanticVersion parse(@NotNull String version) {
+        SemanticVersion parsed = CACHE.get(version);
+
+        if (parsed == null) {
+            parsed = read(version);
+
+            if (CACHE.size() >= CACHE_SIZE) {
+                CACHE.clear();
+            }
+            CACHE.put(version, parsed);
+        }
+
+        if (parsed == INVALID) {
+            throw new IllegalArgumentException("Invalid version %s".formatted(version));
+        }
+
+        return parsed;
+    }
+
+    private static SemanticVersion read(String version) {
+        int end = version.indexOf('+'); // build metadata doesn't affect order
+        if (end == -1) {
+            end = version.length();
+        }
+
+        int dash = version.indexOf('-');
+        int coreEnd = dash == -1 || dash > end ? end : dash;
+
+        int start = 0;
+        if (start < coreEnd && (version.charAt(0) == 'v' || version.charAt(0) == 'V')) {
+            start++;
+        }
+
+        int[] numbers = new int[4];
+        int count = 0;
+        int number = 0;
+        boolean digits = false;
+
+        for (int i = start; i <= coreEnd; i++) {
+            char c = i == coreEnd ? '.' : version.charAt(i);
+
+            if (c == '.') {
+                if (!digits) {
+                    return INVALID;
+                }
+
+                if (count == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, count * 2);
+                }
+                numbers[count++] = number;
+                number = 0;
+                digits = false;
+            } else if (c >= '0' && c <= '9') {
+                if (number > (Integer.MAX_VALUE - 9) / 10) {
+                    return INVALID;
+                }
+
+                number = number * 10 + (c - '0');
+                digits = true;
+            } else {
+                return INVALID;
+            }
+        }
+
+        String[] preRelease = null;
+        if (coreEnd < end) {
+            preRelease = version.substring(coreEnd + 1, end).split("\\.", -1);
+
+            for (String identifier : preRelease) {
+                if (identifier.isEmpty()) {
+                    return INVALID;
+                }
+            }
+        }
+
+        numbers = Arrays.copyOf(numbers, count);
+
+        return new SemanticVersion(numbers, pack(numbers, preRelease == null), preRelease);
+    }
+
+    // packs major, minor and patch into one key, or returns -1 if they don't fit
+    private static long pack(int[] numbers, boolean release) {
+        if (numbers.length > 3) {
+            return -1;
+        }
+
+        long key = 0;
+        for (int i = 0; i < 3; i++) {
+            int number = i < numbers.length ? numbers[i] : 0;
+
+            if (number > MAX) {
+                return -1;
+            }
+            key = key << BITS | number;
+        }
+
+        return key << 1 | (release ? 1 : 0);
+    }
+
+    @Override
+    public int compareTo(@NotNull SemanticVersion other) {
+        if (key != -1 && other.key != -1) {
+            if (key != other.key || preRelease == null) {
+                return Long.compare(key, other.key);
+            }
+
+            return comparePreRelease(preRelease, other.preRelease);
+        }
+
+        int length = Math.max(numbers.length, other.numbers.length);
+        for (int i = 0; i < length; i++) {
+            int compared = Integer.compare(get(i), other.get(i));
+
+            if (compared != 0) {
+                return compared;
+            }
+        }
+
+        return comparePreRelease(preRelease, other.preRelease);
+    }
+
+    // a pre-release has lower precedence than a release, identifiers are compared one by one
+    private static int comparePreRelease(String[] a, String[] b) {
+        if (a == null || b == null) {
+            return a == b ? 0 : a == null ? 1 : -1;
+        }
+
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int compared = compareIdentifier(a[i], b[i]);
+
+            if (compared != 0) {
+                return compared;
+            }
+        }
+
+        return Integer.compare(a.length, b.length);
+    }
+
+    // numeric identifiers are compared numerically and are lower than alphanumeric identifiers
+    private static int compareIdentifier(String a, String b) {
+        boolean numericA = isNumeric(a);
+        boolean numericB = isNumeric(b);
+
+        if (numericA && numericB) {
+            return a.length() != b.length() ? Integer.compare(a.length(), b.length()) : a.compareTo(b);
+        }
+
+        if (numericA != numericB) {
+            return numericA ? -1 : 1;
+        }
+
+        return a.compareTo(b);
+    }
+
+    private static boolean isNumeric(String identifier) {
+        for (int i = 0; i < identifier.length(); i++) {
+            char c = identifier.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+
+        return identifier.length() == 1 || identifier.charAt(0) != '0';
+    }
+
+    /**
+     * @param index The index, where 0 is major, 1 is minor and 2 is patch.
+     * @return the number at the index, or 0 if this version has less numbers.
+     */
+    public int get(int index) {
+        return index < numbers.length ? numbers[index] : 0;
+    }
+
+    /**
+     * @return true if this version has pre-release identifiers, like 1.0.0-beta.
+     */
+    public boolean isPreRelease() {
+        return preRelease != null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SemanticVersion version && compareTo(version) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int length = numbers.length;
+        while (length > 0 && numbers[length - 1] == 0) { // 1.0 and 1.0.0 are equal
+            length--;
+        }
+
+        return 31 * Arrays.hashCode(Arrays.copyOf(numbers, length)) + Arrays.hashCode(preRelease);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < numbers.length; i++) {
+            builder.append(i == 0 ? "" : ".").append(numbers[i]);
+        }
+
+        if (preRelease != null) {
+            builder.append('-').append(String.join(".", preRelease));
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,99 @@
+package dev.efnilite.vilib.util.elevator;
+
+import dev.efnilite.vilib.ViMain;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the {@link GitElevator}s of all registered plugins from a single thread.
+ * Every minute, all elevators whose next check is due are checked at the same time.
+ * The thread stops when the last plugin is unregistered.
+ */
+public final class UpdateChecker {
+
+    /**
+     * The time in seconds between looking for elevators that are due.
+     */
+    public static final int PERIOD = 60;
+
+    private static final Map<Plugin, GitElevator> ELEVATORS = new LinkedHashMap<>();
+    private static ScheduledExecutorService executor;
+
+    private UpdateChecker() {
+
+    }
+
+    /**
+     * Registers the elevator of a plugin. The first check is done immediately on the checker thread,
+     * so the elevator should be created once the plugin is enabled.
+     *
+     * @param plugin   The plugin.
+     * @param elevator The elevator of the plugin.
+     */
+    public static synchronized void register(@NotNull Plugin plugin, @NotNull GitElevator elevator) {
+        ELEVATORS.put(plugin, elevator);
+
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "vilib-update-checker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(UpdateChecker::run, 0, PERIOD, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Unregisters a plugin, e.g. when it's disabled. A running download of the plugin's elevator is cancelled.
+     *
+     * @param plugin The plugin.
+     */
+    public static synchronized void unregister(@NotNull Plugin plugin) {
+        GitElevator elevator = ELEVATORS.remove(plugin);
+        if (elevator != null) {
+            elevator.cancelDownload();
+        }
+
+        if (ELEVATORS.isEmpty() && executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private static void run() {
+        List<Map.Entry<Plugin, GitElevator>> entries;
+        synchronized (UpdateChecker.class) {
+            entries = new ArrayList<>(ELEVATORS.entrySet());
+        }
+
+        List<CompletableFuture<Void>> checks = new ArrayList<>();
+        for (Map.Entry<Plugin, GitElevator> entry : entries) {
+            try {
+                GitElevator elevator = entry.getValue();
+
+                if (elevator.isDue()) {
+                    checks.add(elevator.checkAsync());
+                }
+            } catch (Exception ex) {
+                entry.getKey().getLogger().severe("There was an error while checking the latest version: " + ex.getMessage());
+            }
+        }
+
+        // wait for all checks before looking again, so a slow check isn't started twice
+        // an exception escaping this method would cancel all later runs
+        try {
+            CompletableFuture.allOf(checks.toArray(CompletableFuture[]::new)).join();
+        } catch (Exception ex) {
+            ViMain.logging().stack("Error while waiting for update checks", ex);
+        }
+    }
+}
@@ -16,29 +16,20 @@ public enum VersionComparator {
     },
 
     /**
-     * Compares versions with a semantic syntax. Does not support letters, just numbers.
+     * Compares versions with a semantic syntax, e.g. 1.10.0 is newer than 1.9.9 and 2.0.0 is newer than 2.0.0-beta.
+     *
+     * @see SemanticVersion
      */
     FROM_SEMANTIC {
         @Override
         public boolean isLatest(String latest, String current) {
             try {
-                return toVersionNumber(latest) <= toVersionNumber(current);
-            } catch (NumberFormatException ex) {
-                return false; // if numbers contain letters, assume the worst by not being updated
+                return SemanticVersion.parse(latest).compareTo(SemanticVersion.parse(current)) <= 0;
+            } catch (IllegalArgumentException ex) {
+                return false; // if versions aren't semantic, assume the worst by not being updated
             }
         }
     };
 
     public abstract boolean isLatest(String latest, String current);
-
-    protected double toVersionNumber(String version) {
-        String stripped = strip(version);
-
-        return Double.parseDouble(stripped) / stripped.length();
-    }
-
-    // strips a string
-    protected String strip(String string) {
-        return string.toLowerCase().replace("v", "").replace(".", "");
-    }
-}
\ No newline at end of file
+}
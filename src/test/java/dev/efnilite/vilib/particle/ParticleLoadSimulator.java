@@ -0,0 +1,496 @@
+package dev.efnilite.vilib.particle;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Particle;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Simulates particle load without a running server, so changes to the particle code can be checked for regressions locally.
+ * Players and worlds are replaced by stubs which only count the particles they receive,
+ * while audiences, budgets and shapes run the same code as they would on a server.
+ * Example:
+ * <blockquote><code>ParticleLoadSimulator.create().players(50).effects(200).shape(ParticleShape.box(3, 3, 3, 0.25)).run();</code></blockquote>
+ * <p>
+ * The simulator takes over {@link Bukkit#getCurrentTick()} to advance the budget between ticks,
+ * and runs repeating tasks at the end of every tick, so {@link ParticleBatch} can be simulated too.
+ * It can only be used outside a server, e.g. using {@link #main(String[])} or from {@link ParticleLoadSimulatorTest}.
+ * It's part of the test sources, so it isn't included in the plugin jar.
+ *
+ * @author Efnilite
+ */
+public final class ParticleLoadSimulator {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final Server SERVER = createServer();
+    private static final ParticleTemplate<?> TEMPLATE = new ParticleTemplate<>(Particle.FLAME, null, 1, 0, 0, 0, 0);
+
+    private static final List<SimulatedTask> TASKS = new ArrayList<>();
+
+    private static int currentTick = 0;
+
+    private int players = 20;
+    private int effects = 100;
+    private int ticks = 100;
+    private int period = 1;
+    private double spread = 64;
+    private long seed = 0;
+    private ParticleShape shape = ParticleShape.circle(1, 20);
+    private ParticleAudience audience = ParticleAudience.create();
+    private boolean batched = false;
+
+    private ParticleLoadSimulator() {
+
+    }
+
+    /**
+     * @return a new simulator with 20 players, 100 effects and 100 ticks.
+     */
+    public static ParticleLoadSimulator create() {
+        return new ParticleLoadSimulator();
+    }
+
+    /**
+     * @param players The amount of players, which are placed randomly.
+     * @return this instance.
+     */
+    public ParticleLoadSimulator players(int players) {
+        this.players = players;
+        return this;
+    }
+
+    /**
+     * @param effects The amount of effects, which are placed randomly.
+     * @return this instance.
+     */
+    public ParticleLoadSimulator effects(int effects) {
+        this.effects = effects;
+        return this;
+    }
+
+    /**
+     * @param ticks The amount of ticks to simulate.
+     * @return this instance.
+     */
+    public ParticleLoadSimulator ticks(int ticks) {
+        this.ticks = ticks;
+        return this;
+    }
+
+    /**
+     * @param period The amount of ticks between each redraw of an effect.
+     * @return this instance.
+     */
+    public ParticleLoadSimulator period(int period) {
+        this.period = Math.max(1, period);
+        return this;
+    }
+
+    /**
+     * @param spread The size of the square area in which players and effects are placed.
+     * @return this instance.
+     */
+    public ParticleLoadSimulator spread(double spread) {
+        this.spread = spread;
+        return this;
+    }
+
+    /**
+     * @param seed The seed used to place players and effects, so runs can be compared.
+     * @return this instance.
+     */
+    public ParticleLoadSimulator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param shape The shape every effect draws.
+     * @return this instance.
+     */
+    public ParticleLoadSimulator shape(@NotNull ParticleShape shape) {
+        this.shape = shape;
+        return this;
+    }
+
+    /**
+     * @param audience The audience every effect is drawn for.
+     * @return this instance.
+     */
+    public ParticleLoadSimulator audience(@NotNull ParticleAudience audience) {
+        this.audience = audience;
+        return this;
+    }
+
+    /**
+     * @param batched True to queue every effect in the {@link ParticleBatch}, which is sent at the end of every tick,
+     *                false to draw every effect immediately.
+     * @return this instance.
+     */
+    public ParticleLoadSimulator batched(boolean batched) {
+        this.batched = batched;
+        return this;
+    }
+
+    /**
+     * Runs the scenario. Every tick, every effect resolves its audience and draws its shape for every player in it,
+     * like the {@link ParticleEffectEngine} does, or is queued in the {@link ParticleBatch} when batched.
+     * Effects that are skipped because nobody can see them are only counted when not batched.
+     *
+     * @return the result.
+     */
+    public Result run() {
+        install();
+
+        Random random = new Random(seed);
+        Sink sink = new Sink();
+        World world = createWorld(sink);
+
+        for (int i = 0; i < players; i++) {
+            world.getPlayers().add(createPlayer(world, sink, new Location(world, randomCoordinate(random), 64, randomCoordinate(random),
+                    random.nextFloat() * 360 - 180, random.nextFloat() * 60 - 30)));
+        }
+
+        double[] anchors = new double[effects * 3];
+        for (int i = 0; i < effects; i++) {
+            anchors[i * 3] = randomCoordinate(random);
+            anchors[i * 3 + 1] = 64 + random.nextDouble() * 4;
+            anchors[i * 3 + 2] = randomCoordinate(random);
+        }
+
+        ParticleBudget.resetCounters();
+        long culled = 0;
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+
+        for (int tick = 0; tick < ticks; tick++) {
+            currentTick++;
+
+            for (int effect = 0; effect < effects; effect++) {
+                if ((tick + effect) % period != 0) {
+                    continue;
+                }
+
+                double x = anchors[effect * 3];
+                double y = anchors[effect * 3 + 1];
+                double z = anchors[effect * 3 + 2];
+
+                if (batched) {
+                    ParticleBatch.queue(shape, world, x, y, z, TEMPLATE, audience);
+                    continue;
+                }
+
+                List<Player> recipients = audience.resolve(world, x, y, z, shape.getRadius());
+                if (recipients.isEmpty()) {
+                    culled++;
+                    continue;
+                }
+
+                for (Player player : recipients) {
+                    shape.drawBudgeted(player, x, y, z, TEMPLATE);
+                }
+            }
+
+            runTasks();
+        }
+
+        long nanos = System.nanoTime() - start;
+        bytes = bytes < 0 ? -1 : Math.max(0, allocatedBytes() - bytes - sink.spawned * Sink.overhead());
+
+        return new Result(sink.spawned, ParticleBudget.getSimplified(), ParticleBudget.getDropped(), culled, nanos, bytes);
+    }
+
+    private double randomCoordinate(Random random) {
+        return (random.nextDouble() - 0.5) * spread;
+    }
+
+    /**
+     * Draws a shape for a single player at its anchor, to measure the cost of the shape itself.
+     * The shape is drawn through its audience draw, like an effect, so resolving the audience and the budget are included.
+     * A tick passes between every iteration, so only shapes with more points than the budget are simplified.
+     *
+     * @param shape      The shape.
+     * @param iterations The amount of times the shape is drawn.
+     * @return the result.
+     */
+    public static Result measure(@NotNull ParticleShape shape, int iterations) {
+        install();
+
+        Sink sink = new Sink();
+        World world = createWorld(sink);
+        Location anchor = new Location(world, 0, 64, 0);
+        world.getPlayers().add(createPlayer(world, sink, anchor));
+        ParticleAudience audience = ParticleAudience.create();
+
+        ParticleBudget.resetCounters();
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            currentTick++;
+            shape.draw(anchor, TEMPLATE, audience);
+        }
+
+        long nanos = System.nanoTime() - start;
+        bytes = bytes < 0 ? -1 : Math.max(0, allocatedBytes() - bytes - sink.spawned * Sink.overhead());
+
+        return new Result(sink.spawned, ParticleBudget.getSimplified(), ParticleBudget.getDropped(), 0, nanos, bytes);
+    }
+
+    /**
+     * Prints the cost of the default shapes at different spacings, and a scenario with the given amount of players and effects.
+     *
+     * @param args Optionally the amount of players, effects and ticks.
+     */
+    public static void main(String[] args) {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int effects = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        for (double spacing : new double[]{1, 0.5, 0.25, 0.1}) {
+            System.out.printf("line   spacing %.2f: %s%n", spacing, measure(ParticleShape.line(10, 0, 0, spacing), 10_000));
+            System.out.printf("box    spacing %.2f: %s%n", spacing, measure(ParticleShape.box(3, 3, 3, spacing), 10_000));
+            System.out.printf("circle spacing %.2f: %s%n", spacing, measure(ParticleShape.circle(2, (int) Math.ceil(2 * Math.PI * 2 / spacing)), 10_000));
+        }
+
+        // warm up before the measured run
+        create().players(players).effects(effects).ticks(ticks).run();
+
+        System.out.printf("%d players, %d effects, %d ticks: %s%n", players, effects, ticks,
+                create().players(players).effects(effects).ticks(ticks).shape(ParticleShape.box(3, 3, 3, 0.25)).run());
+    }
+
+    // runs every repeating task, like the server does at the end of a tick
+    private static void runTasks() {
+        TASKS.removeIf(task -> task.cancelled);
+
+        for (SimulatedTask task : List.copyOf(TASKS)) {
+            if (!task.cancelled) {
+                task.runnable.run();
+            }
+        }
+    }
+
+    private static void install() {
+        if (Bukkit.getServer() == null) {
+            Bukkit.setServer(SERVER);
+        } else if (Bukkit.getServer() != SERVER) {
+            throw new IllegalStateException("ParticleLoadSimulator can't be used on a running server");
+        }
+    }
+
+    // the allocated bytes of the current thread, or -1 if the jvm doesn't support it
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemorySupported()) {
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static Server createServer() {
+        Logger logger = Logger.getLogger("ParticleLoadSimulator");
+
+        // repeating tasks run at the end of every simulated tick, other tasks run immediately on the calling thread
+        BukkitScheduler scheduler = (BukkitScheduler) Proxy.newProxyInstance(BukkitScheduler.class.getClassLoader(), new Class<?>[]{BukkitScheduler.class}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.getName().equals("equals") ? proxy == args[0] : method.getName().equals("hashCode") ? System.identityHashCode(proxy) : "scheduler";
+            }
+
+            Runnable runnable = args != null && args.length > 1 && args[1] instanceof Runnable r ? r : null;
+            if (runnable == null) {
+                return defaultValue(method.getReturnType());
+            }
+
+            SimulatedTask task = new SimulatedTask(runnable);
+            if (method.getName().startsWith("runTaskTimer")) {
+                TASKS.add(task);
+            } else {
+                runnable.run();
+                task.cancelled = true;
+            }
+            return method.getReturnType() == BukkitTask.class ? task.proxy() : defaultValue(method.getReturnType());
+        });
+
+        return (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[]{Server.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getCurrentTick" -> currentTick;
+            case "getScheduler" -> scheduler;
+            case "getLogger" -> logger;
+            case "getName", "getVersion", "getBukkitVersion" -> "ParticleLoadSimulator";
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+
+    private static World createWorld(Sink sink) {
+        UUID uuid = UUID.randomUUID();
+        List<Player> players = new ArrayList<>();
+
+        return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[]{World.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "spawnParticle" -> {
+                sink.spawned += players.size();
+                yield null;
+            }
+            case "getPlayers" -> players;
+            case "getUID" -> uuid;
+            case "getName" -> "simulated";
+            case "isChunkLoaded" -> true;
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+
+    private static Player createPlayer(World world, Sink sink, Location location) {
+        UUID uuid = UUID.randomUUID();
+
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "spawnParticle" -> {
+                sink.spawned++;
+                yield null;
+            }
+            case "getLocation" -> {
+                if (args == null) {
+                    yield location.clone();
+                }
+
+                Location target = (Location) args[0];
+                target.setWorld(world);
+                target.setX(location.getX());
+                target.setY(location.getY());
+                target.setZ(location.getZ());
+                target.setYaw(location.getYaw());
+                target.setPitch(location.getPitch());
+                yield target;
+            }
+            case "getEyeLocation" -> location.clone().add(0, 1.62, 0);
+            case "getEyeHeight" -> 1.62;
+            case "getClientViewDistance" -> 10;
+            case "getWorld" -> world;
+            case "getUniqueId" -> uuid;
+            case "getName" -> uuid.toString().substring(0, 16);
+            case "isOnline", "isValid" -> true;
+            case "hashCode" -> uuid.hashCode();
+            case "equals" -> proxy == args[0];
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0D;
+        } else if (type == float.class) {
+            return 0F;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == char.class) {
+            return (char) 0;
+        }
+        return null;
+    }
+
+    /**
+     * The result of a simulation.
+     *
+     * @param spawned        The amount of particles received by all players.
+     * @param simplified     The amount of points skipped to lower detail.
+     * @param dropped        The amount of points dropped because a player's budget was used up.
+     * @param culled         The amount of times an effect was skipped because nobody could see it.
+     * @param nanos          The time taken in nanoseconds.
+     * @param allocatedBytes The bytes allocated by the drawing code, excluding the stubs, or -1 if unknown.
+     */
+    public record Result(long spawned, long simplified, long dropped, long culled, long nanos, long allocatedBytes) {
+
+        /**
+         * @return the amount of particles sent per second.
+         */
+        public double getPointsPerSecond() {
+            return nanos == 0 ? 0 : spawned / (nanos / 1_000_000_000D);
+        }
+
+        @Override
+        public String toString() {
+            return "%,.0f points/s, %,d spawned, %,d simplified, %,d dropped, %,d culled, %.2f ms, %,d bytes allocated"
+                    .formatted(getPointsPerSecond(), spawned, simplified, dropped, culled, nanos / 1_000_000D, allocatedBytes);
+        }
+    }
+
+    // a task registered with the simulated scheduler
+    private static final class SimulatedTask {
+
+        private final Runnable runnable;
+        private boolean cancelled;
+
+        private SimulatedTask(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        private BukkitTask proxy() {
+            return (BukkitTask) Proxy.newProxyInstance(BukkitTask.class.getClassLoader(), new Class<?>[]{BukkitTask.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "cancel" -> {
+                    cancelled = true;
+                    yield null;
+                }
+                case "isCancelled" -> cancelled;
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> defaultValue(method.getReturnType());
+            });
+        }
+    }
+
+    // counts the particles received by the stubs
+    private static final class Sink {
+
+        private static long overhead = -1;
+
+        private long spawned;
+
+        // the bytes allocated by a single call to a stub, which are subtracted from the results
+        private static long overhead() {
+            if (overhead >= 0) {
+                return overhead;
+            }
+
+            long before = allocatedBytes();
+            if (before < 0) {
+                return overhead = 0;
+            }
+
+            Sink sink = new Sink();
+            World world = createWorld(sink);
+            Player player = createPlayer(world, sink, new Location(world, 0, 0, 0));
+
+            int calls = 100_000;
+            for (int i = 0; i < calls; i++) { // warm up
+                TEMPLATE.spawn(player, i, i, i);
+            }
+
+            before = allocatedBytes();
+            for (int i = 0; i < calls; i++) {
+                TEMPLATE.spawn(player, i, i, i);
+            }
+            return overhead = (allocatedBytes() - before) / calls;
+        }
+    }
+}
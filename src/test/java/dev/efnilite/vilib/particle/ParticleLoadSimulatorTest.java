@@ -0,0 +1,78 @@
+package dev.efnilite.vilib.particle;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs {@link ParticleLoadSimulator} scenarios and fails when the particle code exceeds its limits.
+ *
+ * @author Efnilite
+ */
+class ParticleLoadSimulatorTest {
+
+    private static final int PLAYERS = 10;
+    private static final int TICKS = 20;
+    private static final int PER_TICK = 100;
+
+    @AfterEach
+    void reset() {
+        ParticleBudget.setPerTick(ParticleBudget.DEFAULT_PER_TICK);
+    }
+
+    @Test
+    void directDrawsStayWithinBudget() {
+        assertWithinBudget(scenario().run());
+    }
+
+    @Test
+    void batchedDrawsStayWithinBudget() {
+        assertWithinBudget(scenario().batched(true).run());
+    }
+
+    @Test
+    void fullDetailUpClose() {
+        ParticleShape shape = ParticleShape.circle(1, 20);
+
+        ParticleLoadSimulator.Result result = ParticleLoadSimulator.measure(shape, 100);
+
+        assertEquals(100L * shape.size(), result.spawned());
+        assertEquals(0, result.simplified() + result.dropped());
+    }
+
+    @Test
+    void drawsDontAllocatePerPoint() {
+        ParticleShape shape = ParticleShape.box(3, 3, 3, 0.1);
+        assumeTrue(shape.size() >= 100);
+
+        ParticleLoadSimulator.measure(shape, 10_000); // warm up
+        ParticleLoadSimulator.Result result = ParticleLoadSimulator.measure(shape, 10_000);
+        assumeTrue(result.allocatedBytes() >= 0, "Allocation counting isn't supported by this jvm");
+
+        // resolving the audience allocates a little per draw, allocating per point would be several kilobytes
+        long perDraw = result.allocatedBytes() / 10_000;
+        assertTrue(perDraw < 1024, "Allocated %d bytes per draw of %d points".formatted(perDraw, shape.size()));
+    }
+
+    // every player sees every effect, which together have more points than the budget allows
+    private static ParticleLoadSimulator scenario() {
+        ParticleBudget.setPerTick(PER_TICK);
+
+        return ParticleLoadSimulator.create()
+                .players(PLAYERS)
+                .effects(20)
+                .ticks(TICKS)
+                .spread(8)
+                .shape(ParticleShape.box(3, 3, 3, 0.25));
+    }
+
+    private static void assertWithinBudget(ParticleLoadSimulator.Result result) {
+        assertTrue(result.spawned() > 0, "Nothing was spawned");
+        assertTrue(result.spawned() <= (long) PLAYERS * TICKS * PER_TICK,
+                "Spawned %d particles, budget allows %d".formatted(result.spawned(), PLAYERS * TICKS * PER_TICK));
+        assertTrue(result.simplified() + result.dropped() > 0, "Budget was never applied");
+    }
+}
@@ -0,0 +1,155 @@
+package dev.efnilite.vilib.serialization;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.UnsafeValues;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.util.Base64;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Compares the throughput of {@link ItemCodec} with the implementation it replaced,
+ * which created new streams for every item and used line-wrapped Base 64.
+ * The server is replaced by a stub which only provides what serializing items without meta needs,
+ * so it can only be used outside a server, using {@link #main(String[])}.
+ * It's part of the test sources, so it isn't included in the plugin jar.
+ */
+public final class ItemCodecBenchmark {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final ItemStack[] ITEMS = new ItemStack[64];
+
+    private ItemCodecBenchmark() {
+
+    }
+
+    /**
+     * Prints the operations per second and the bytes allocated per operation of encoding and decoding items.
+     *
+     * @param args Optionally the amount of iterations.
+     */
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        install();
+
+        Material[] materials = {Material.STONE, Material.DIAMOND_SWORD, Material.OAK_PLANKS, Material.BOW};
+        for (int i = 0; i < ITEMS.length; i++) {
+            ITEMS[i] = new ItemStack(materials[i % materials.length], i % 64 + 1);
+        }
+
+        String[] legacy = new String[ITEMS.length];
+        String[] codec = new String[ITEMS.length];
+        for (int i = 0; i < ITEMS.length; i++) {
+            legacy[i] = legacyEncode(ITEMS[i]);
+            codec[i] = ItemCodec.encode64(ITEMS[i]);
+        }
+
+        // warm up before the measured runs
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+
+            run("legacy encode", iterations, print, i -> legacyEncode(ITEMS[i]));
+            run("codec  encode", iterations, print, i -> ItemCodec.encode64(ITEMS[i]));
+            run("legacy decode", iterations, print, i -> legacyDecode(legacy[i]));
+            run("codec  decode", iterations, print, i -> ItemCodec.decode64(codec[i], ItemCodec.Variant.BASIC));
+        }
+    }
+
+    private static void run(String name, int iterations, boolean print, Function<Integer, Object> operation) {
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+
+        Object sink = null;
+        for (int i = 0; i < iterations; i++) {
+            sink = operation.apply(i & (ITEMS.length - 1));
+        }
+
+        long nanos = System.nanoTime() - start;
+        bytes = bytes < 0 ? -1 : allocatedBytes() - bytes;
+
+        if (print && sink != null) {
+            System.out.printf("%s: %,.0f ops/s, %,d bytes allocated per op%n",
+                    name, iterations / (nanos / 1_000_000_000D), bytes < 0 ? -1 : bytes / iterations);
+        }
+    }
+
+    // how ObjectSerializer serialized items before ItemCodec
+    private static String legacyEncode(ItemStack item) {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            BukkitObjectOutputStream stream = new BukkitObjectOutputStream(output);
+            stream.writeObject(item);
+            stream.close();
+
+            return Base64.getMimeEncoder().encodeToString(output.toByteArray());
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // how ObjectSerializer deserialized items before ItemCodec, with the stream closed after reading
+    private static ItemStack legacyDecode(String string) {
+        try (BukkitObjectInputStream stream = new BukkitObjectInputStream(new ByteArrayInputStream(Base64.getMimeDecoder().decode(string)))) {
+            return (ItemStack) stream.readObject();
+        } catch (IOException | ClassNotFoundException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // the allocated bytes of the current thread, or -1 if the jvm doesn't support it
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemorySupported()) {
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void install() {
+        if (Bukkit.getServer() != null) {
+            throw new IllegalStateException("ItemCodecBenchmark can't be used on a running server");
+        }
+
+        Logger logger = Logger.getLogger("ItemCodecBenchmark");
+
+        UnsafeValues unsafe = (UnsafeValues) Proxy.newProxyInstance(UnsafeValues.class.getClassLoader(), new Class<?>[]{UnsafeValues.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getDataVersion" -> 3463; // 1.20
+            case "getMaterial" -> Material.getMaterial((String) args[0]);
+            case "fromLegacy" -> args[0];
+            default -> null;
+        });
+
+        // items without meta are the only items the stub can serialize
+        ItemFactory factory = (ItemFactory) Proxy.newProxyInstance(ItemFactory.class.getClassLoader(), new Class<?>[]{ItemFactory.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "equals" -> args.length == 2 ? args[0] == args[1] : proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            default -> null;
+        });
+
+        Bukkit.setServer((Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[]{Server.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getUnsafe" -> unsafe;
+            case "getItemFactory" -> factory;
+            case "getLogger" -> logger;
+            case "getName", "getVersion", "getBukkitVersion" -> "ItemCodecBenchmark";
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            default -> null;
+        }));
+
+        ConfigurationSerialization.registerClass(ItemStack.class);
+    }
+}
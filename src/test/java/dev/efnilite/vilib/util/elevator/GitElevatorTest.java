@@ -0,0 +1,146 @@
+package dev.efnilite.vilib.util.elevator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.efnilite.vilib.ViPlugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks {@link GitElevator} against a local server that mirrors the releases endpoint of the GitHub API.
+ */
+class GitElevatorTest {
+
+    private static final String REPO = "Efnilite/vilib";
+    private static final String ETAG = "\"release-2.0.0\"";
+    private static final String RELEASE = """
+            {"tag_name": "2.0.0", "assets": [{"browser_download_url": "http://localhost/vilib.jar", "size": 1024}]}""";
+
+    @TempDir
+    File folder;
+
+    private final List<String> conditions = new CopyOnWriteArrayList<>(); // the If-None-Match header of every request
+    private final List<Integer> responses = new CopyOnWriteArrayList<>();
+    private volatile boolean failing = false;
+
+    private HttpServer server;
+    private ViPlugin plugin;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/repos/%s/releases/latest".formatted(REPO), this::handle);
+        server.start();
+
+        plugin = mock(ViPlugin.class);
+        when(plugin.getName()).thenReturn("ElevatorTest");
+        when(plugin.getDataFolder()).thenReturn(folder);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("ElevatorTest"));
+        when(plugin.getDescription()).thenReturn(new PluginDescriptionFile("ElevatorTest", "1.0.0", "dev.efnilite.ElevatorTest"));
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+        int status = failing ? 500 : ETAG.equals(condition) ? 304 : 200;
+
+        // recorded before responding, so the results are complete once a check is done
+        conditions.add(condition == null ? "" : condition);
+        responses.add(status);
+
+        if (status != 200) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] body = RELEASE.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        exchange.sendResponseHeaders(status, body.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private GitElevator createElevator() {
+        return new GitElevator(REPO, plugin, VersionComparator.FROM_SEMANTIC, false,
+                "http://%s:%d".formatted(server.getAddress().getHostString(), server.getAddress().getPort()));
+    }
+
+    @Test
+    void newerReleaseIsOutdated() {
+        GitElevator elevator = createElevator();
+        assertTrue(elevator.isDue());
+
+        elevator.check();
+
+        assertEquals(List.of(""), conditions);
+        assertEquals(List.of(200), responses);
+        assertEquals("2.0.0", elevator.getLatestVersion());
+        assertTrue(elevator.isOutdated());
+        assertFalse(elevator.isDue());
+        assertTrue(new File(folder, GitElevator.CACHE_FILE).exists());
+    }
+
+    @Test
+    void unchangedReleaseIsNotModified() {
+        GitElevator elevator = createElevator();
+
+        elevator.check();
+        elevator.check();
+
+        assertEquals(List.of("", ETAG), conditions);
+        assertEquals(List.of(200, 304), responses);
+        assertEquals("2.0.0", elevator.getLatestVersion());
+        assertTrue(elevator.isOutdated());
+    }
+
+    @Test
+    void cacheIsUsedAfterRestart() {
+        createElevator().check();
+
+        GitElevator elevator = createElevator();
+        assertEquals("2.0.0", elevator.getLatestVersion());
+
+        elevator.check();
+
+        assertEquals(List.of("", ETAG), conditions);
+        assertEquals(List.of(200, 304), responses);
+        assertTrue(elevator.isOutdated());
+    }
+
+    @Test
+    void failedCheckBacksOff() {
+        failing = true;
+        GitElevator elevator = createElevator();
+
+        elevator.check();
+
+        assertEquals(List.of(500), responses);
+        assertNull(elevator.getLatestVersion());
+        assertFalse(elevator.isOutdated());
+        assertFalse(elevator.isDue());
+    }
+}